@@ -0,0 +1,74 @@
+/**
+ * AudioSource.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.io.IOException;
+
+/**
+ * Interface for the audio sources<br>
+ * An audio source delivers mono, 16 bit PCM samples at 11025 Hz to the fingerprinting pipeline,
+ * from the microphone, a recorded capture, etc.
+ *
+ */
+public interface AudioSource
+{
+	/**
+	 * @return the smallest buffer, in samples, the source can fill
+	 */
+	public int getMinBufferSize();
+	
+	/**
+	 * Starts delivering audio
+	 * @throws IOException if the source can't be started
+	 */
+	public void start() throws IOException;
+	
+	/**
+	 * Reads samples, blocking until some are available
+	 * 
+	 * @param buffer the buffer to fill
+	 * @param offset the first sample to write in the buffer
+	 * @param length the maximum number of samples to read
+	 * @return the number of samples read, or -1 if the source can't deliver more audio
+	 */
+	public int read(short buffer[], int offset, int length);
+	
+	/**
+	 * @return true once the source has been stopped or ran out of audio
+	 */
+	public boolean isStopped();
+	
+	/**
+	 * Stops the source, pending and following reads return as soon as possible<br>
+	 * Can be called from any thread.
+	 */
+	public void stop();
+	
+	/**
+	 * Releases the resources of the source, it can't be started again
+	 */
+	public void release();
+}
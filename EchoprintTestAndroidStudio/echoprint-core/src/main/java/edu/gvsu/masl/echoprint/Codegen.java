@@ -0,0 +1,196 @@
+/**
+ * Codegen.java
+ * EchoprintCore
+ * 
+ * Created by Alex Restrepo on 1/22/12.
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+/**
+ * Codegen class<br>
+ * This class bridges the native Codegen library with the Java side...<br>
+ * The codes can be generated by the native library or by JavaCodegen, a port of it that
+ * runs on any JVM. The native library is the default; JavaCodegen is only used when it
+ * is requested with Engine.JAVA or with the echoprint.codegen system property set to "java".
+ * 
+ * @author Alex Restrepo (MASL)
+ *
+ */
+public class Codegen 
+{
+	/**
+	 * The implementations of the echoprint codegen
+	 */
+	public enum Engine
+	{
+		/** the echoprint-codegen library, through JNI */
+		NATIVE,
+		/** JavaCodegen */
+		JAVA
+	}
+	
+	public final static String ENGINE_PROPERTY = "echoprint.codegen";
+	
+	private final static UnsatisfiedLinkError nativeError;
+	
+	private final float normalizingValue = Short.MAX_VALUE;
+	private float normalizeAudioData[];
+	
+	private final Engine engine;
+	private final JavaCodegen javaCodegen;
+	
+	native String codegen(float data[], int numSamples);
+	
+	static 
+	{
+		// picks the library built for this platform, see NativeLibraryLoader
+		UnsatisfiedLinkError error = null;
+		try
+		{
+			NativeLibraryLoader.load("echoprint-jni");
+		}
+		catch(UnsatisfiedLinkError e)
+		{
+			// no native library for this platform, only Engine.JAVA can be used.
+			// The error is thrown again when the native engine is requested.
+			error = e;
+		}
+		nativeError = error;
+    }
+	
+	/**
+	 * Creates a codegen with the default engine, see getDefaultEngine()
+	 * 
+	 * @throws UnsatisfiedLinkError if the default engine is native and the library couldn't be loaded
+	 */
+	public Codegen()
+	{
+		this(getDefaultEngine());
+	}
+	
+	/**
+	 * Creates a codegen with the given engine
+	 * 
+	 * @param engine the engine that will generate the codes
+	 * @throws UnsatisfiedLinkError if the native engine is requested but the library couldn't be loaded
+	 */
+	public Codegen(Engine engine)
+	{
+		if(engine == Engine.NATIVE && nativeError != null)
+		{
+			UnsatisfiedLinkError error = new UnsatisfiedLinkError(nativeError.getMessage());
+			error.initCause(nativeError);
+			throw error;
+		}
+		
+		this.engine = engine;
+		this.javaCodegen = engine == Engine.JAVA ? new JavaCodegen() : null;
+	}
+	
+	/**
+	 * @return true if the native library was loaded
+	 */
+	public static boolean isNativeAvailable()
+	{
+		return nativeError == null;
+	}
+	
+	/**
+	 * The native library is the default engine, even when it couldn't be loaded, so a
+	 * missing library is reported instead of silently switching to JavaCodegen.
+	 * 
+	 * @return the engine used by new Codegen(): JAVA if the echoprint.codegen system property is "java", NATIVE otherwise
+	 */
+	public static Engine getDefaultEngine()
+	{
+		if("java".equalsIgnoreCase(System.getProperty(ENGINE_PROPERTY)))
+			return Engine.JAVA;
+		
+		return Engine.NATIVE;
+	}
+	
+	/**
+	 * @return the engine of this codegen
+	 */
+	public Engine getEngine()
+	{
+		return engine;
+	}
+	
+	/**
+	 * Invoke the echoprint native library and generate the fingerprint code.<br>
+	 * Echoprint REQUIRES PCM encoded audio with the following parameters:<br>
+	 * Frequency: 11025 khz<br>
+	 * Data: MONO - PCM enconded float array
+	 * 
+	 * @param data PCM encoded data as floats [-1, 1]
+	 * @param numSamples number of PCM samples at 11025 KHz
+	 * @return The generated fingerprint as a compressed - base64 string.
+	 */
+	public String generate(float data[], int numSamples)
+	{
+		if(engine == Engine.JAVA)
+			return javaCodegen.codegen(data, numSamples);
+		
+		return codegen(data, numSamples);
+	}
+	
+	/**
+	 * Invoke the echoprint native library and generate the fingerprint code.<br>
+	 * Since echoprint requires the audio data to be an array of floats in the<br>
+	 * range [-1, 1] this method will normalize the data array transforming the<br>
+	 * 16 bit signed shorts into floats. 
+	 * 
+	 * @param data PCM encoded data as shorts
+	 * @param numSamples number of PCM samples at 11025 KHz
+	 * @return The generated fingerprint as a compressed - base64 string.
+	 */
+	public String generate(short data[], int numSamples)
+	{
+		return this.generate(normalize(data, numSamples), numSamples);
+	}
+	
+	/**
+	 * Transforms 16 bit signed shorts into floats in the range [-1, 1].<br>
+	 * The returned array is reused by the next call, so a Codegen instance<br>
+	 * must not be shared between threads.
+	 * 
+	 * @param data PCM encoded data as shorts
+	 * @param numSamples number of PCM samples to normalize
+	 * @return the normalized samples, the array may be longer than numSamples
+	 */
+	public float[] normalize(short data[], int numSamples)
+	{
+		// echoprint expects data as floats, which is the native value for 
+		// core audio data, and I guess ffmpeg
+		// Android records data as 16 bit shorts, so we need to normalize the
+		// data before sending it to echoprint
+		if(normalizeAudioData == null || normalizeAudioData.length < numSamples)
+			normalizeAudioData = new float[numSamples];
+		
+		for (int i = 0; i < numSamples; i++) 
+			normalizeAudioData[i] = data[i] / normalizingValue;
+		
+		return normalizeAudioData;
+	}
+}
@@ -0,0 +1,308 @@
+/**
+ * EchoprintCode.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Echoprint code<br>
+ * Decodes and encodes the fingerprint code strings generated by the codegen.<br>
+ * A code string is the url safe base64 encoding of a zlib compressed text made of
+ * the time offset of every code followed by every hash, each one as 5 hex digits.<br>
+ * Instances keep their arrays and their deflater around so they can be reused for
+ * several codes; they are not thread safe.
+ *
+ */
+public class EchoprintCode
+{
+	private final static char BASE64[] = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+	private final static char HEX[] = "0123456789abcdef".toCharArray();
+	private final static int DIGITS = 5;
+	
+	private int times[] = new int[0];
+	private int hashes[] = new int[0];
+	private int count;
+	
+	// encoding buffers, reused across calls
+	private Deflater deflater;
+	private byte digits[] = new byte[0];
+	private byte deflated[] = new byte[0];
+	private char base64[] = new char[0];
+	
+	/**
+	 * @return the number of codes
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * @return the time offsets, only the first getCount() entries are valid
+	 */
+	public int[] getTimes()
+	{
+		return times;
+	}
+	
+	/**
+	 * @return the hashes, only the first getCount() entries are valid
+	 */
+	public int[] getHashes()
+	{
+		return hashes;
+	}
+	
+	/**
+	 * Replaces the codes of this instance
+	 * 
+	 * @param times the time offsets
+	 * @param hashes the hashes
+	 * @param count the number of codes to copy
+	 */
+	public void set(int times[], int hashes[], int count)
+	{
+		ensureCapacity(count);
+		System.arraycopy(times, 0, this.times, 0, count);
+		System.arraycopy(hashes, 0, this.hashes, 0, count);
+		this.count = count;
+	}
+	
+	/**
+	 * Decodes a code string into this instance
+	 * 
+	 * @param code the code string as returned by Codegen.generate()
+	 * @throws IllegalArgumentException if the string is not a valid code
+	 */
+	public void decode(String code)
+	{
+		byte compressed[] = decodeBase64(code);
+		
+		Inflater inflater = new Inflater();
+		ByteArrayOutputStream text = new ByteArrayOutputStream(compressed.length * 4);
+		try
+		{
+			inflater.setInput(compressed);
+			byte buffer[] = new byte[4096];
+			while(!inflater.finished())
+			{
+				int n = inflater.inflate(buffer);
+				if(n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IllegalArgumentException("truncated code");
+				
+				text.write(buffer, 0, n);
+			}
+		}
+		catch(DataFormatException e)
+		{
+			throw new IllegalArgumentException("invalid code: " + e.getMessage());
+		}
+		finally
+		{
+			inflater.end();
+		}
+		
+		byte digits[] = text.toByteArray();
+		if(digits.length % (2 * DIGITS) != 0)
+			throw new IllegalArgumentException("invalid code length: " + digits.length);
+		
+		int n = digits.length / (2 * DIGITS);
+		ensureCapacity(n);
+		for(int i = 0; i < n; i++)
+		{
+			times[i] = parseHex(digits, i * DIGITS);
+			hashes[i] = parseHex(digits, (n + i) * DIGITS);
+		}
+		count = n;
+	}
+	
+	/**
+	 * Encodes the codes of this instance the same way the codegen does
+	 * 
+	 * @return the code string, empty if there are less than 3 codes
+	 */
+	public String encode()
+	{
+		// the codegen doesn't generate a code string out of less than 3 codes
+		if(count < 3)
+			return "";
+		
+		int length = 2 * DIGITS * count;
+		if(digits.length < length)
+			digits = new byte[length];
+		
+		for(int i = 0; i < count; i++)
+		{
+			writeHex(digits, i * DIGITS, times[i]);
+			writeHex(digits, (count + i) * DIGITS, hashes[i]);
+		}
+		
+		// the codegen compresses with zlib's default level
+		if(deflater == null)
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		else
+			deflater.reset();
+		
+		deflater.setInput(digits, 0, length);
+		deflater.finish();
+		if(deflated.length < length / 2)
+			deflated = new byte[length / 2];
+		
+		int size = 0;
+		while(!deflater.finished())
+		{
+			if(size == deflated.length)
+			{
+				byte larger[] = new byte[deflated.length * 2];
+				System.arraycopy(deflated, 0, larger, 0, size);
+				deflated = larger;
+			}
+			size += deflater.deflate(deflated, size, deflated.length - size);
+		}
+		
+		int encodedLength = (size + 2) / 3 * 4;
+		if(base64.length < encodedLength)
+			base64 = new char[encodedLength];
+		
+		return new String(base64, 0, encodeBase64(deflated, size, base64));
+	}
+	
+	private void ensureCapacity(int n)
+	{
+		if(times.length < n)
+		{
+			times = new int[n];
+			hashes = new int[n];
+		}
+	}
+	
+	private static int parseHex(byte digits[], int offset)
+	{
+		int value = 0;
+		for(int i = offset; i < offset + DIGITS; i++)
+		{
+			int c = digits[i];
+			int d;
+			if(c >= '0' && c <= '9')
+				d = c - '0';
+			else if(c >= 'a' && c <= 'f')
+				d = c - 'a' + 10;
+			else if(c >= 'A' && c <= 'F')
+				d = c - 'A' + 10;
+			else
+				throw new IllegalArgumentException("invalid hex digit: " + (char) c);
+			
+			value = (value << 4) | d;
+		}
+		return value;
+	}
+	
+	private static void writeHex(byte digits[], int offset, int value)
+	{
+		// same as printf("%05x"), the time offsets and the 20 bit hashes always fit in 5 digits
+		for(int i = offset + DIGITS - 1; i >= offset; i--)
+		{
+			digits[i] = (byte) HEX[value & 0xf];
+			value >>>= 4;
+		}
+	}
+	
+	/**
+	 * @return the number of chars written to out
+	 */
+	private static int encodeBase64(byte data[], int length, char out[])
+	{
+		int o = 0;
+		int i = 0;
+		for(; i + 2 < length; i += 3)
+		{
+			int b = ((data[i] & 0xff) << 16) | ((data[i + 1] & 0xff) << 8) | (data[i + 2] & 0xff);
+			out[o++] = BASE64[(b >>> 18) & 0x3f];
+			out[o++] = BASE64[(b >>> 12) & 0x3f];
+			out[o++] = BASE64[(b >>> 6) & 0x3f];
+			out[o++] = BASE64[b & 0x3f];
+		}
+		
+		int remaining = length - i;
+		if(remaining > 0)
+		{
+			int b = (data[i] & 0xff) << 16;
+			if(remaining == 2)
+				b |= (data[i + 1] & 0xff) << 8;
+			
+			out[o++] = BASE64[(b >>> 18) & 0x3f];
+			out[o++] = BASE64[(b >>> 12) & 0x3f];
+			out[o++] = remaining == 2 ? BASE64[(b >>> 6) & 0x3f] : '=';
+			out[o++] = '=';
+		}
+		
+		return o;
+	}
+	
+	static byte[] decodeBase64(String s)
+	{
+		// accept both the url safe and the standard alphabet, with or without padding
+		int length = s.length();
+		while(length > 0 && s.charAt(length - 1) == '=')
+			length--;
+		
+		byte out[] = new byte[length * 3 / 4];
+		int o = 0;
+		int bits = 0;
+		int buffer = 0;
+		for(int i = 0; i < length; i++)
+		{
+			buffer = (buffer << 6) | base64Value(s.charAt(i));
+			bits += 6;
+			if(bits >= 8)
+			{
+				bits -= 8;
+				out[o++] = (byte) (buffer >>> bits);
+			}
+		}
+		
+		return out;
+	}
+	
+	private static int base64Value(char c)
+	{
+		if(c >= 'A' && c <= 'Z')
+			return c - 'A';
+		if(c >= 'a' && c <= 'z')
+			return c - 'a' + 26;
+		if(c >= '0' && c <= '9')
+			return c - '0' + 52;
+		if(c == '-' || c == '+')
+			return 62;
+		if(c == '_' || c == '/')
+			return 63;
+		
+		throw new IllegalArgumentException("invalid base64 character: " + c);
+	}
+}
@@ -0,0 +1,522 @@
+/**
+ * EndpointRouter.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import edu.gvsu.masl.echoprint.FingerprinterMetrics.Counter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Endpoint router<br>
+ * Query transport spreading the queries over several endpoints. Each endpoint keeps an
+ * exponentially weighted moving average of its latency and error rate, and every query goes to
+ * the endpoint with the lowest expected latency. The older the average, the less it weighs
+ * against a new sample.<br>
+ * If the answer takes longer than the 95th percentile of the recent latencies, a hedged duplicate
+ * is sent to the next best endpoint and the first successful response wins; the queries still
+ * in flight are cancelled. A failed query is retried right away on the next endpoint.<br>
+ * An endpoint failing FAILURE_THRESHOLD times in a row is put in cooldown: it is only queried
+ * when all the other endpoints failed, until the cooldown is over. Hedges never go to an
+ * endpoint in cooldown. When the cooldown ends the endpoint is half open: its error rate is
+ * forgotten and a single failure puts it back in cooldown.<br>
+ * The averages only move when an endpoint is queried, so one query in PROBE_INTERVAL goes to
+ * one of the other endpoints out of cooldown, in turn. An endpoint that recovered or warmed
+ * up after a bad start can rank first again; the probe is hedged to the best endpoint.<br>
+ * Cancelling interrupts the query threads, but a transport blocked on network I/O only returns
+ * once its timeouts expire, so the transports need timeouts to bound the threads left behind.
+ *
+ */
+public class EndpointRouter implements QueryTransport
+{
+	public final static int FAILURE_THRESHOLD = 5;
+	public final static int PROBE_INTERVAL = 20;
+	
+	// weight of the last sample in the moving averages, it grows when the previous samples are old
+	private final static double EWMA_ALPHA = 0.2;
+	private final static long EWMA_HALF_LIFE = TimeUnit.SECONDS.toNanos(5);
+	
+	// the hedge delay is taken from the last HEDGE_WINDOW latencies, once there are HEDGE_MIN_SAMPLES of them
+	private final static int HEDGE_WINDOW = 1000;
+	private final static int HEDGE_MIN_SAMPLES = 20;
+	private final static double HEDGE_PERCENTILE = 95;
+	
+	private final List<Endpoint> endpoints;
+	private final Executor executor;
+	
+	private volatile long cooldown = TimeUnit.SECONDS.toNanos(30);
+	private volatile long initialHedgeDelay = TimeUnit.SECONDS.toNanos(1);
+	private volatile boolean hedging = true;
+	private volatile FingerprinterMetrics metrics = FingerprinterMetrics.getDefault();
+	
+	private final AtomicLong samples = new AtomicLong();
+	private final AtomicLong queries = new AtomicLong();
+	private volatile LatencyHistogram currentLatencies = new LatencyHistogram();
+	private volatile LatencyHistogram previousLatencies;
+	
+	/**
+	 * Creates a router running the queries on its own daemon threads
+	 * 
+	 * @param endpoints the transports to route the queries to
+	 */
+	public EndpointRouter(List<? extends QueryTransport> endpoints)
+	{
+		this(endpoints, Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "EndpointRouter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+	}
+	
+	/**
+	 * @param endpoints the transports to route the queries to, with timeouts
+	 * @param executor runs the queries, it needs a thread per concurrent query and hedge
+	 */
+	public EndpointRouter(List<? extends QueryTransport> endpoints, Executor executor)
+	{
+		if(endpoints.isEmpty())
+			throw new IllegalArgumentException("no endpoints to route to");
+		
+		List<Endpoint> list = new ArrayList<Endpoint>();
+		for(QueryTransport transport : endpoints)
+			list.add(new Endpoint(transport));
+		
+		this.endpoints = Collections.unmodifiableList(list);
+		this.executor = executor;
+	}
+	
+	/**
+	 * Creates a router querying the servers over HTTP
+	 * 
+	 * @param serverUrls the urls the codes are appended to
+	 * @param connectTimeout the connection timeout in milliseconds
+	 * @param readTimeout the timeout waiting for response data in milliseconds
+	 * @return the router
+	 * @throws IllegalArgumentException if a timeout is not positive, a query to a hung server would hold its thread forever
+	 */
+	public static EndpointRouter forUrls(List<String> serverUrls, int connectTimeout, int readTimeout)
+	{
+		if(connectTimeout <= 0 || readTimeout <= 0)
+			throw new IllegalArgumentException("the router needs timeouts, got " + connectTimeout + " and " + readTimeout + " ms");
+		
+		List<HttpQueryTransport> transports = new ArrayList<HttpQueryTransport>();
+		for(String url : serverUrls)
+		{
+			HttpQueryTransport transport = new HttpQueryTransport(url);
+			transport.setTimeouts(connectTimeout, readTimeout);
+			transports.add(transport);
+		}
+		
+		return new EndpointRouter(transports);
+	}
+	
+	/**
+	 * @param cooldown how long an endpoint stays in cooldown after FAILURE_THRESHOLD failures in a row, in milliseconds
+	 */
+	public void setCooldown(long cooldown)
+	{
+		this.cooldown = TimeUnit.MILLISECONDS.toNanos(cooldown);
+	}
+	
+	/**
+	 * @param hedging true to send hedged duplicates of the slow queries, failed queries are retried either way
+	 */
+	public void setHedging(boolean hedging)
+	{
+		this.hedging = hedging;
+	}
+	
+	/**
+	 * @param delay the hedge delay used until enough latencies are known, in milliseconds
+	 */
+	public void setInitialHedgeDelay(long delay)
+	{
+		this.initialHedgeDelay = TimeUnit.MILLISECONDS.toNanos(delay);
+	}
+	
+	/**
+	 * @param metrics where the hedged and failed over queries are counted
+	 */
+	public void setMetrics(FingerprinterMetrics metrics)
+	{
+		if(metrics == null)
+			throw new IllegalArgumentException("metrics can't be null");
+		
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * @return the endpoints with their statistics
+	 */
+	public List<Endpoint> getEndpoints()
+	{
+		return endpoints;
+	}
+	
+	/**
+	 * @return the current hedge delay in milliseconds
+	 */
+	public double getHedgeDelay()
+	{
+		return hedgeDelay() / 1e6;
+	}
+	
+	public String query(String code) throws IOException
+	{
+		long now = System.nanoTime();
+		List<Endpoint> ranking = rank(now);
+		CompletionService<String> completion = new ExecutorCompletionService<String>(executor);
+		List<Future<String>> futures = new ArrayList<Future<String>>(ranking.size());
+		AtomicBoolean settled = new AtomicBoolean();
+		long delay = hedgeDelay();
+		
+		// the endpoints in cooldown are ranked last, they are only used to fail over
+		int open = 0;
+		while(open < ranking.size() && !ranking.get(open).isCoolingDown(now))
+			open++;
+		
+		// refresh the statistics of the endpoints that are not ranked first
+		long count = queries.getAndIncrement();
+		if(open > 1 && count % PROBE_INTERVAL == PROBE_INTERVAL - 1)
+		{
+			int probe = 1 + (int) (count / PROBE_INTERVAL % (open - 1));
+			ranking.add(0, ranking.remove(probe));
+		}
+		
+		int next = 0;
+		int pending = 0;
+		boolean hedged = !hedging;
+		IOException failure = null;
+		
+		futures.add(submit(completion, ranking.get(next++), code, settled));
+		pending++;
+		
+		try
+		{
+			while(pending > 0)
+			{
+				Future<String> done;
+				if(!hedged && next < open)
+				{
+					done = completion.poll(delay, TimeUnit.NANOSECONDS);
+					if(done == null)
+					{
+						// too slow, ask the next endpoint too
+						hedged = true;
+						metrics.increment(Counter.HEDGES);
+						futures.add(submit(completion, ranking.get(next++), code, settled));
+						pending++;
+						continue;
+					}
+				}
+				else
+					done = completion.take();
+				
+				pending--;
+				try
+				{
+					String response = done.get();
+					cancel(futures, settled);
+					return response;
+				}
+				catch(ExecutionException e)
+				{
+					failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+					
+					// nothing else in flight, fail over to the next endpoint
+					if(pending == 0 && next < ranking.size())
+					{
+						metrics.increment(Counter.FAILOVERS);
+						futures.add(submit(completion, ranking.get(next++), code, settled));
+						pending++;
+					}
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			cancel(futures, settled);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("query interrupted");
+		}
+		
+		throw failure;
+	}
+	
+	private static void cancel(List<Future<String>> futures, AtomicBoolean settled)
+	{
+		settled.set(true);
+		for(Future<String> future : futures)
+			future.cancel(true);
+	}
+	
+	/**
+	 * @param settled set once the query is answered or abandoned, the queries failing after that were cancelled
+	 */
+	private Future<String> submit(CompletionService<String> completion, final Endpoint endpoint, final String code, final AtomicBoolean settled)
+	{
+		return completion.submit(new Callable<String>()
+		{
+			public String call() throws IOException
+			{
+				long time = System.nanoTime();
+				try
+				{
+					String response = endpoint.transport.query(code);
+					long latency = System.nanoTime() - time;
+					endpoint.succeeded(time + latency, latency);
+					recordLatency(latency);
+					return response;
+				}
+				catch(IOException e)
+				{
+					failed(endpoint, time, settled);
+					throw e;
+				}
+				catch(RuntimeException e)
+				{
+					failed(endpoint, time, settled);
+					throw e;
+				}
+			}
+		});
+	}
+	
+	private void failed(Endpoint endpoint, long start, AtomicBoolean settled)
+	{
+		long now = System.nanoTime();
+		
+		// a cancelled query is not a failure of the endpoint, but it was at least that slow
+		if(settled.get())
+			endpoint.cancelled(now, now - start);
+		else
+			endpoint.failed(now, cooldown);
+	}
+	
+	/**
+	 * @return the endpoints out of cooldown by expected latency, then the others by end of cooldown
+	 */
+	private List<Endpoint> rank(final long now)
+	{
+		for(Endpoint endpoint : endpoints)
+			endpoint.closeCooldown(now);
+		
+		List<Endpoint> ranking = new ArrayList<Endpoint>(endpoints);
+		Collections.sort(ranking, new Comparator<Endpoint>()
+		{
+			public int compare(Endpoint a, Endpoint b)
+			{
+				boolean aOpen = a.isCoolingDown(now);
+				boolean bOpen = b.isCoolingDown(now);
+				if(aOpen != bOpen)
+					return aOpen ? 1 : -1;
+				if(aOpen)
+					return a.cooldownUntil < b.cooldownUntil ? -1 : (a.cooldownUntil > b.cooldownUntil ? 1 : 0);
+				
+				return Double.compare(a.getScore(), b.getScore());
+			}
+		});
+		
+		return ranking;
+	}
+	
+	private void recordLatency(long latency)
+	{
+		currentLatencies.record(latency);
+		
+		// start a new window every HEDGE_WINDOW samples so the delay follows the servers
+		if(samples.incrementAndGet() % HEDGE_WINDOW == 0)
+		{
+			previousLatencies = currentLatencies;
+			currentLatencies = new LatencyHistogram();
+		}
+	}
+	
+	private long hedgeDelay()
+	{
+		LatencyHistogram latencies = previousLatencies;
+		if(latencies == null)
+			latencies = currentLatencies;
+		
+		LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+		if(snapshot.getCount() < HEDGE_MIN_SAMPLES)
+			return initialHedgeDelay;
+		
+		return snapshot.getValueAtPercentile(HEDGE_PERCENTILE);
+	}
+	
+	/**
+	 * Endpoint statistics<br>
+	 * The averages are updated by the query threads, the getters can be called from any thread.
+	 */
+	public static class Endpoint
+	{
+		private final QueryTransport transport;
+		
+		private volatile double latency;
+		private volatile double errorRate;
+		private volatile boolean measured;
+		private volatile long cooldownUntil;
+		private volatile boolean tripped;
+		private int failures;
+		private long lastSample;
+		
+		Endpoint(QueryTransport transport)
+		{
+			this.transport = transport;
+			this.lastSample = System.nanoTime();
+		}
+		
+		public QueryTransport getTransport()
+		{
+			return transport;
+		}
+		
+		/**
+		 * @return the average latency of the successful queries in milliseconds
+		 */
+		public double getLatency()
+		{
+			return latency / 1e6;
+		}
+		
+		/**
+		 * @return the average fraction of failed queries
+		 */
+		public double getErrorRate()
+		{
+			return errorRate;
+		}
+		
+		/**
+		 * @return true while the endpoint is in cooldown
+		 */
+		public boolean isCoolingDown()
+		{
+			return isCoolingDown(System.nanoTime());
+		}
+		
+		boolean isCoolingDown(long now)
+		{
+			return cooldownUntil - now > 0;
+		}
+		
+		/**
+		 * @return the expected time to get a successful answer, endpoints never queried come first
+		 *         and endpoints that never answered but failed come last
+		 */
+		double getScore()
+		{
+			if(!measured)
+				return errorRate > 0 ? Double.POSITIVE_INFINITY : 0;
+			
+			// each failure costs a retry
+			return latency / Math.max(1 - errorRate, 0.1);
+		}
+		
+		/**
+		 * @return the weight of a new sample, EWMA_ALPHA plus the weight the old average lost with time
+		 */
+		private double alpha(long now)
+		{
+			double age = now - lastSample;
+			lastSample = now;
+			return 1 - (1 - EWMA_ALPHA) * Math.pow(0.5, age / EWMA_HALF_LIFE);
+		}
+		
+		synchronized void succeeded(long now, long nanos)
+		{
+			double alpha = alpha(now);
+			latency = measured ? latency + alpha * (nanos - latency) : nanos;
+			errorRate -= alpha * errorRate;
+			measured = true;
+			failures = 0;
+		}
+		
+		synchronized void cancelled(long now, long nanos)
+		{
+			// the latency is at least the time spent before the cancellation
+			double alpha = alpha(now);
+			latency = measured ? latency + alpha * (Math.max(nanos, latency) - latency) : nanos;
+			measured = true;
+		}
+		
+		synchronized void failed(long now, long cooldown)
+		{
+			errorRate += alpha(now) * (1 - errorRate);
+			if(++failures >= FAILURE_THRESHOLD)
+			{
+				cooldownUntil = now + cooldown;
+				tripped = true;
+			}
+		}
+		
+		/**
+		 * Half opens the endpoint once its cooldown is over: the next query decides
+		 */
+		void closeCooldown(long now)
+		{
+			if(!tripped || isCoolingDown(now))
+				return;
+			
+			synchronized(this)
+			{
+				if(tripped && !isCoolingDown(now))
+				{
+					tripped = false;
+					errorRate = 0;
+					failures = FAILURE_THRESHOLD - 1;
+				}
+			}
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.US, "%s latency=%.2fms errors=%.1f%%%s", transport, getLatency(), errorRate * 100, isCoolingDown() ? " cooling down" : "");
+		}
+	}
+}
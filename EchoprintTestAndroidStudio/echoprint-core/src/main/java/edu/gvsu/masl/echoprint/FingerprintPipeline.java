@@ -0,0 +1,283 @@
+/**
+ * FingerprintPipeline.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.util.Hashtable;
+
+import edu.gvsu.masl.echoprint.FingerprinterMetrics.Counter;
+import edu.gvsu.masl.echoprint.FingerprinterMetrics.Stage;
+
+/**
+ * Fingerprinting pipeline<br>
+ * Reads audio from an AudioSource, generates the fingerprint code, queries the server
+ * through a QueryTransport and forwards the results to a ListenerDispatcher.<br>
+ * It has no Android dependencies, the Android AudioFingerprinter runs it on the microphone and the
+ * load test runs it on recorded captures.
+ *
+ */
+public class FingerprintPipeline implements Runnable
+{
+	public final static int SAMPLE_RATE = 11025;
+	
+	private final AudioSource source;
+	private final QueryTransport transport;
+	private final ListenerDispatcher dispatcher;
+	private final int secondsToRecord;
+	private final QueryResponseParser parser = new QueryResponseParser();
+	
+	private volatile boolean isRunning = false;
+	private volatile boolean continuous;
+	private volatile FingerprinterMetrics metrics = FingerprinterMetrics.getDefault();
+	private Codegen.Engine engine;
+	
+	/**
+	 * Constructor for the class
+	 * 
+	 * @param source where the audio is read from
+	 * @param transport how the codes are sent to the server
+	 * @param dispatcher where the callbacks are sent
+	 * @param seconds the number of seconds to record per pass, capped to [10, 30]
+	 * @param continuous if true, a new pass is started after each pass until stop() is called
+	 */
+	public FingerprintPipeline(AudioSource source, QueryTransport transport, ListenerDispatcher dispatcher, int seconds, boolean continuous)
+	{
+		this.source = source;
+		this.transport = transport;
+		this.dispatcher = dispatcher;
+		this.continuous = continuous;
+		
+		// cap to 30 seconds max, 10 seconds min.
+		this.secondsToRecord = Math.max(Math.min(seconds, 30), 10);
+	}
+	
+	/**
+	 * @param metrics where the stage timings and counters are recorded
+	 */
+	public void setMetrics(FingerprinterMetrics metrics)
+	{
+		if(metrics == null)
+			throw new IllegalArgumentException("metrics can't be null");
+		
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * @param engine the codegen engine, null for Codegen.getDefaultEngine()
+	 */
+	public void setCodegenEngine(Codegen.Engine engine)
+	{
+		this.engine = engine;
+	}
+	
+	/**
+	 * @return the number of seconds recorded per pass
+	 */
+	public int getSecondsToRecord()
+	{
+		return secondsToRecord;
+	}
+	
+	/**
+	 * @return true while the pipeline is running
+	 */
+	public boolean isRunning()
+	{
+		return isRunning;
+	}
+	
+	/**
+	 * stops the listening / fingerprinting process, can be called from any thread
+	 */
+	public void stop()
+	{
+		this.continuous = false;
+		source.stop();
+	}
+	
+	/**
+	 * The main loop<br>
+	 * Records audio and generates the audio fingerprint, then it queries the server for a match and forwards the results to the listener.
+	 */
+	public void run() 
+	{
+		this.isRunning = true;
+		try 
+		{			
+			// create the audio buffer
+			// frequency * seconds to record.
+			int bufferSize = Math.max(source.getMinBufferSize(), SAMPLE_RATE * this.secondsToRecord);
+			short audioData[] = new short[bufferSize];
+			
+			// create an echoprint codegen wrapper, reused by all the passes
+			Codegen codegen = engine == null ? new Codegen() : new Codegen(engine);
+			
+			willStartListening();
+			
+			source.start();
+			boolean firstRun = true;
+			do 
+			{		
+				try
+				{
+					willStartListeningPass();
+					
+					FingerprinterMetrics metrics = this.metrics;
+					long time = System.nanoTime();
+					// fill audio buffer with source data.
+					int samplesIn = 0;
+					do 
+					{					
+						int read = source.read(audioData, samplesIn, bufferSize - samplesIn);
+						if(read < 0)
+							break;
+						
+						samplesIn += read;
+						
+						if(source.isStopped())
+							break;
+					} 
+					while (samplesIn < bufferSize);				
+					metrics.record(Stage.CAPTURE, System.nanoTime() - time);
+										
+					// see if the process was stopped.
+					if(source.isStopped() || samplesIn < bufferSize || (!firstRun && !this.continuous))
+						break;
+					
+					metrics.increment(Counter.WINDOWS);
+					
+					// get the code
+					time = System.nanoTime();
+					float pcm[] = codegen.normalize(audioData, samplesIn);
+					long normalized = System.nanoTime();
+					metrics.record(Stage.NORMALIZE, normalized - time);
+					
+	    			String code = codegen.generate(pcm, samplesIn);
+	    			metrics.record(Stage.CODEGEN, System.nanoTime() - normalized);
+	    			
+	    			if(code.length() == 0)
+	    			{
+	    				// no code?
+	    				// not enough audio data?
+	    				metrics.increment(Counter.SKIPS);
+						continue;
+	    			}
+	    			
+	    			didGenerateFingerprintCode(code);
+	    			
+	    			// fetch data from the server
+	    			time = System.nanoTime();
+	    			String result = transport.query(code);
+	    	        metrics.record(Stage.QUERY, System.nanoTime() - time);
+
+	    			// parse JSON
+					time = System.nanoTime();
+					QueryResult queryResult = parser.parse(result);
+					metrics.record(Stage.PARSE, System.nanoTime() - time);
+					
+					switch(queryResult.getStatus())
+					{
+						case MATCH:
+							didFindMatchForCode(queryResult.getMatch(), code);
+							break;
+						case NO_MATCH:
+							didNotFindMatchForCode(code);
+							break;
+						case ERROR:
+							didFailWithException(new Exception(queryResult.getMessage()));
+							break;
+						default:
+							break;
+					}
+		    		
+		    		firstRun = false;
+				
+		    		didFinishListeningPass();
+				}
+				catch(Exception e)
+				{
+					e.printStackTrace();
+					
+					didFailWithException(e);
+				}
+			}
+			while (this.continuous);
+		} 
+		catch (Exception e) 
+		{
+			e.printStackTrace();
+			
+			didFailWithException(e);
+		}
+		
+		source.release();
+		this.isRunning = false;
+		
+		didFinishListening();
+	}
+	
+	private void didFinishListening()
+	{
+		dispatcher.didFinishListening();
+	}
+	
+	private void didFinishListeningPass()
+	{
+		dispatcher.didFinishListeningPass();
+	}
+	
+	private void willStartListening()
+	{
+		dispatcher.willStartListening();
+	}
+	
+	private void willStartListeningPass()
+	{
+		dispatcher.willStartListeningPass();
+	}
+	
+	private void didGenerateFingerprintCode(String code)
+	{
+		dispatcher.didGenerateFingerprintCode(code);
+	}
+	
+	private void didFindMatchForCode(Hashtable<String, String> table, String code)
+	{
+		metrics.increment(Counter.MATCHES);
+		dispatcher.didFindMatchForCode(table, code);
+	}
+	
+	private void didNotFindMatchForCode(String code)
+	{
+		metrics.increment(Counter.MISSES);
+		dispatcher.didNotFindMatchForCode(code);
+	}
+	
+	private void didFailWithException(Exception e)
+	{
+		metrics.increment(Counter.ERRORS);
+		dispatcher.didFailWithException(e);
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * FingerprinterListener.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.util.Hashtable;
+
+/**
+ * Interface for the fingerprinter listener<br>
+ * Contains the different delegate methods for the fingerprinting process.<br>
+ * This interface has no Android dependencies so it can be implemented by anything
+ * that consumes fingerprinting events, not only activities.
+ *
+ */
+public interface FingerprinterListener
+{
+	/**
+	 * Called when the fingerprinter process loop has finished
+	 */
+	public void didFinishListening();
+	
+	/**
+	 * Called when a single fingerprinter pass has finished
+	 */
+	public void didFinishListeningPass();
+	
+	/**
+	 * Called when the fingerprinter is about to start
+	 */
+	public void willStartListening();
+	
+	/**
+	 * Called when a single listening pass is about to start
+	 */
+	public void willStartListeningPass();
+	
+	/**
+	 * Called when the codegen libary generates a fingerprint code
+	 * @param code the generated fingerprint as a zcompressed, base64 string
+	 */
+	public void didGenerateFingerprintCode(String code);
+	
+	/**
+	 * Called if the server finds a match for the submitted fingerprint code 
+	 * @param table a hashtable with the metadata returned from the server
+	 * @param code the submited fingerprint code
+	 */
+	public void didFindMatchForCode(Hashtable<String, String> table, String code);
+	
+	/**
+	 * Called if the server DOES NOT find a match for the submitted fingerprint code
+	 * @param code the submited fingerprint code
+	 */
+	public void didNotFindMatchForCode(String code);
+	
+	/**
+	 * Called if there is an error / exception in the fingerprinting process
+	 * @param e an exception with the error
+	 */
+	public void didFailWithException(Exception e);
+}
@@ -0,0 +1,230 @@
+/**
+ * FingerprinterMetrics.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fingerprinter metrics<br>
+ * Collects a latency histogram for every stage of the fingerprinting process and
+ * counters for its outcomes. All the methods are thread safe and lock-free, so a
+ * single instance can be shared by every fingerprinter in the process; by default
+ * they all record into getDefault().<br>
+ * Nothing is exported on its own: call export() when the snapshots are needed, or
+ * startExporting() to publish them periodically from a daemon thread.
+ *
+ */
+public class FingerprinterMetrics
+{
+	/**
+	 * The timed stages of a listening pass
+	 */
+	public enum Stage
+	{
+		/** recording the audio for a pass */
+		CAPTURE,
+		/** converting the 16 bit samples into floats */
+		NORMALIZE,
+		/** generating the fingerprint code */
+		CODEGEN,
+		/** querying the server */
+		QUERY,
+		/** parsing the server response */
+		PARSE,
+		/** delivering a callback to the listener, including the time spent queued */
+		DISPATCH
+	}
+	
+	/**
+	 * The counted outcomes
+	 */
+	public enum Counter
+	{
+		/** listening passes that recorded audio */
+		WINDOWS,
+		/** codes the server found a match for */
+		MATCHES,
+		/** codes the server did not find a match for */
+		MISSES,
+		/** passes skipped because no code was generated */
+		SKIPS,
+		/** errors reported to the listener */
+		ERRORS,
+		/** duplicate queries sent by an EndpointRouter after the hedge delay */
+		HEDGES,
+		/** queries an EndpointRouter sent to another endpoint after a failure */
+		FAILOVERS
+	}
+	
+	private final static FingerprinterMetrics DEFAULT = new FingerprinterMetrics();
+	
+	private final LatencyHistogram histograms[];
+	private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+	private final CopyOnWriteArrayList<MetricsExporter> exporters = new CopyOnWriteArrayList<MetricsExporter>();
+	
+	// periodic export, guarded by this
+	private ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> exportTask;
+	
+	/**
+	 * @return the instance shared by the fingerprinters that don't set their own
+	 */
+	public static FingerprinterMetrics getDefault()
+	{
+		return DEFAULT;
+	}
+	
+	public FingerprinterMetrics()
+	{
+		histograms = new LatencyHistogram[Stage.values().length];
+		for(int i = 0; i < histograms.length; i++)
+			histograms[i] = new LatencyHistogram();
+	}
+	
+	/**
+	 * Records the duration of a stage
+	 * 
+	 * @param stage the stage
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(Stage stage, long nanos)
+	{
+		histograms[stage.ordinal()].record(nanos);
+	}
+	
+	/**
+	 * Increments a counter by one
+	 * 
+	 * @param counter the counter
+	 */
+	public void increment(Counter counter)
+	{
+		counters.incrementAndGet(counter.ordinal());
+	}
+	
+	/**
+	 * @return a point in time copy of all the histograms and counters
+	 */
+	public MetricsSnapshot snapshot()
+	{
+		LatencyHistogram.Snapshot stages[] = new LatencyHistogram.Snapshot[histograms.length];
+		for(int i = 0; i < stages.length; i++)
+			stages[i] = histograms[i].snapshot();
+		
+		long counts[] = new long[counters.length()];
+		for(int i = 0; i < counts.length; i++)
+			counts[i] = counters.get(i);
+		
+		return new MetricsSnapshot(System.currentTimeMillis(), stages, counts);
+	}
+	
+	public void addExporter(MetricsExporter exporter)
+	{
+		exporters.addIfAbsent(exporter);
+	}
+	
+	public void removeExporter(MetricsExporter exporter)
+	{
+		exporters.remove(exporter);
+	}
+	
+	/**
+	 * Takes a snapshot and hands it to every registered exporter
+	 * 
+	 * @return the exported snapshot
+	 */
+	public MetricsSnapshot export()
+	{
+		MetricsSnapshot snapshot = snapshot();
+		for(MetricsExporter exporter : exporters)
+			exporter.export(snapshot);
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Starts calling export() periodically on a daemon thread, replacing any previous period
+	 * 
+	 * @param period the time between two exports
+	 * @param unit the unit of the period
+	 */
+	public synchronized void startExporting(long period, TimeUnit unit)
+	{
+		if(period <= 0)
+			throw new IllegalArgumentException("period must be positive");
+		
+		if(exportTask != null)
+			exportTask.cancel(false);
+		
+		if(scheduler == null)
+		{
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "FingerprinterMetrics");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		exportTask = scheduler.scheduleAtFixedRate(new Runnable()
+		{
+			public void run()
+			{
+				// an exception would cancel the periodic task, keep exporting instead
+				try
+				{
+					export();
+				}
+				catch(RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}, period, period, unit);
+	}
+	
+	/**
+	 * Stops the periodic export started with startExporting()
+	 */
+	public synchronized void stopExporting()
+	{
+		if(scheduler == null)
+			return;
+		
+		scheduler.shutdown();
+		scheduler = null;
+		exportTask = null;
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * HttpQueryTransport.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * HTTP query transport<br>
+ * Queries the server with a GET request made of the server url followed by the code.
+ *
+ */
+public class HttpQueryTransport implements QueryTransport
+{
+	private final String serverUrl;
+	private volatile int connectTimeout;
+	private volatile int readTimeout;
+	
+	/**
+	 * @param serverUrl the url the code is appended to, e.g. "http://api.mooma.sh/v1/song/identify?api_key=KEY&code="
+	 */
+	public HttpQueryTransport(String serverUrl)
+	{
+		this.serverUrl = serverUrl;
+	}
+	
+	/**
+	 * @return the url the codes are appended to
+	 */
+	public String getServerUrl()
+	{
+		return serverUrl;
+	}
+	
+	/**
+	 * Sets the timeouts of the queries, 0 (the default) waits forever
+	 * 
+	 * @param connectTimeout the connection timeout in milliseconds
+	 * @param readTimeout the timeout waiting for response data in milliseconds
+	 */
+	public void setTimeouts(int connectTimeout, int readTimeout)
+	{
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+	
+	public String query(String code) throws IOException
+	{
+		String urlstr = serverUrl + code;			
+		HttpClient client = new DefaultHttpClient();
+		
+		HttpParams params = client.getParams();
+		HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+		HttpConnectionParams.setSoTimeout(params, readTimeout);
+		
+		try
+		{
+			HttpGet get = new HttpGet(urlstr);
+			
+			// get response
+			HttpResponse response = client.execute(get);                
+			
+			// let the caller retry the server errors elsewhere
+			int status = response.getStatusLine().getStatusCode();
+			if(status >= 500)
+				throw new IOException("server error: HTTP " + status);
+			
+			// Get hold of the response entity
+			HttpEntity entity = response.getEntity();
+			// If the response does not enclose an entity, there is no need
+			// to worry about connection release
+			
+			String result = "";
+			if (entity != null) 
+			{
+				// A Simple JSON Response Read
+				InputStream instream = entity.getContent();
+				result = convertStreamToString(instream);
+				// now you have the string representation of the HTML request
+				instream.close();
+			}
+			
+			return result;
+		}
+		finally
+		{
+			client.getConnectionManager().shutdown();
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return serverUrl;
+	}
+	
+	private static String convertStreamToString(InputStream is) throws IOException
+	{
+	    /*
+	     * To convert the InputStream to String we use the BufferedReader.readLine()
+	     * method. We iterate until the BufferedReader return null which means
+	     * there's no more data to read. Each line will appended to a StringBuilder
+	     * and returned as String.
+	     */
+	    BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+	    StringBuilder sb = new StringBuilder();
+
+	    String line = null;
+	    try {
+	        while ((line = reader.readLine()) != null) {
+	            sb.append(line + "\n");
+	        }
+	    } finally {
+	        try {
+	            is.close();
+	        } catch (IOException e) {
+	            e.printStackTrace();
+	        }
+	    }
+	    return sb.toString();
+	}
+}
@@ -0,0 +1,569 @@
+/**
+ * JavaCodegen.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+/**
+ * Java codegen<br>
+ * A port of the echoprint-codegen pipeline (whitening, subband analysis, onset detection
+ * and hashing) that runs on any JVM. The constants and the arithmetic follow the armeabi
+ * libechoprint-jni shipped in echoprintLib step by step, in float or double exactly where
+ * it uses them; CodegenParityCheck compares the code strings of both engines.<br>
+ * The working arrays are kept and reused by the next call, so an instance must not be
+ * shared between threads.
+ *
+ */
+class JavaCodegen
+{
+	private final static int SAMPLING_RATE = 11025;
+	
+	// whitening
+	private final static int WHITENING_BLOCK_SIZE = 10000;
+	private final static int WHITENING_ORDER = 40;
+	private final static float WHITENING_ALPHA = (float) 0.125;
+	private final static float WHITENING_R0 = (float) 0.001;
+	
+	// subband analysis
+	private final static int SUBBANDS = 8;
+	private final static int M_ROWS = 8;
+	private final static int M_COLS = 16;
+	private final static int C_LEN = 128;
+	
+	// fingerprint
+	private final static int HASH_SEED = 0x9ea5fa36;
+	private final static int HASH_BITMASK = 0x000fffff;
+	private final static double QUANTIZE_DT_S = 256.0 / 11025.0;
+	private final static double QUANTIZE_A_S = 256.0 / 11025.0;
+	private final static int ONSET_TARGET = 345;
+	private final static int HANN_LENGTH = 8;
+	private final static int HANN_HOP = 4;
+	private final static int DEADTIME = 128;
+	private final static double OVERFACT = 1.1;
+	private final static double BN[] = {0.1883, 0.4230, 0.3392};
+	private final static double A1 = 0.98;
+	
+	// 128pt, 1/8th band low-pass prototype subsampled from the MPEG-1 analysis window.
+	// Kept as doubles and rounded to float like the C++ float initializers are.
+	private final static double C_TABLE[] = {
+		 0.000000477,  0.000000954,  0.000001431,  0.000002384,  0.000003815,  0.000006199,  0.000009060,  0.000013828,
+		 0.000019550,  0.000027657,  0.000037670,  0.000049591,  0.000062943,  0.000076771,  0.000090599,  0.000101566,
+		-0.000108242, -0.000106812, -0.000095367, -0.000069618, -0.000027180,  0.000034332,  0.000116348,  0.000218868,
+		 0.000339031,  0.000472546,  0.000611782,  0.000747204,  0.000866413,  0.000954151,  0.000994205,  0.000971317,
+		-0.000868797, -0.000674248, -0.000378609,  0.000021458,  0.000522137,  0.001111031,  0.001766682,  0.002457142,
+		 0.003141880,  0.003771782,  0.004290581,  0.004638195,  0.004752159,  0.004573822,  0.004049301,  0.003134727,
+		-0.001800537, -0.000033379,  0.002161503,  0.004756451,  0.007703304,  0.010933399,  0.014358521,  0.017876148,
+		 0.021372318,  0.024725437,  0.027815342,  0.030526638,  0.032754898,  0.034412861,  0.035435200,  0.035780907,
+		-0.035435200, -0.034412861, -0.032754898, -0.030526638, -0.027815342, -0.024725437, -0.021372318, -0.017876148,
+		-0.014358521, -0.010933399, -0.007703304, -0.004756451, -0.002161503,  0.000033379,  0.001800537,  0.003134727,
+		-0.004049301, -0.004573822, -0.004752159, -0.004638195, -0.004290581, -0.003771782, -0.003141880, -0.002457142,
+		-0.001766682, -0.001111031, -0.000522137, -0.000021458,  0.000378609,  0.000674248,  0.000868797,  0.000971317,
+		-0.000994205, -0.000954151, -0.000866413, -0.000747204, -0.000611782, -0.000472546, -0.000339031, -0.000218868,
+		-0.000116348, -0.000034332,  0.000027180,  0.000069618,  0.000095367,  0.000106812,  0.000108242,  0.000101566,
+		-0.000090599, -0.000076771, -0.000062943, -0.000049591, -0.000037670, -0.000027657, -0.000019550, -0.000013828,
+		-0.000009060, -0.000006199, -0.000003815, -0.000002384, -0.000001431, -0.000000954, -0.000000477,  0.000000000
+	};
+	
+	private final static float C[] = new float[C_LEN];
+	private final static float MR[] = new float[M_ROWS * M_COLS];
+	private final static float MI[] = new float[M_ROWS * M_COLS];
+	private final static float HANN[] = new float[HANN_LENGTH];
+	
+	static
+	{
+		for(int i = 0; i < C_LEN; i++)
+			C[i] = (float) C_TABLE[i];
+		
+		// analysis filter bank coefficients
+		for(int i = 0; i < M_ROWS; i++)
+		{
+			for(int k = 0; k < M_COLS; k++)
+			{
+				// the native loop counters are unsigned, so (k - 4) wraps around for k < 4 and the
+				// product is taken modulo 2^32, keep that to get the same rounding of the angle
+				long product = ((2L * i + 1) * ((k - 4) & 0xffffffffL)) & 0xffffffffL;
+				double angle = product * (Math.PI / 16.0);
+				MR[i * M_COLS + k] = (float) StrictMath.cos(angle);
+				MI[i * M_COLS + k] = (float) StrictMath.sin(angle);
+			}
+		}
+		
+		// smoothing window of the onset detection
+		for(int i = 0; i < HANN_LENGTH; i++)
+			HANN[i] = (float) (0.5 - 0.5 * StrictMath.cos((2.0 * Math.PI / (HANN_LENGTH - 1)) * i));
+	}
+	
+	// working arrays, reused across calls
+	private final float r[] = new float[WHITENING_ORDER + 1];
+	private final float xo[] = new float[WHITENING_ORDER + 1];
+	private final float ai[] = new float[WHITENING_ORDER + 1];
+	private final float z[] = new float[C_LEN];
+	private final float y[] = new float[M_COLS];
+	private final int onsetCount[] = new int[SUBBANDS];
+	private final double h[] = new double[SUBBANDS];
+	private final double taus[] = new double[SUBBANDS];
+	private final double y0[] = new double[SUBBANDS];
+	private final int lcontact[] = new int[SUBBANDS];
+	private final int tsince[] = new int[SUBBANDS];
+	private final int p0[] = new int[6];
+	private final int p1[] = new int[6];
+	private final byte hashMaterial[] = new byte[5];
+	private float whitened[] = new float[0];
+	private float energy[] = new float[0];
+	private float smoothed[] = new float[0];
+	private int onsets[] = new int[0];
+	private double decay[] = new double[0];
+	private int times[] = new int[0];
+	private int hashes[] = new int[0];
+	private final EchoprintCode code = new EchoprintCode();
+	
+	/**
+	 * Generates the fingerprint code
+	 * 
+	 * @param data PCM encoded data as floats [-1, 1]
+	 * @param numSamples number of PCM samples at 11025 KHz
+	 * @return The generated fingerprint as a compressed - base64 string.
+	 */
+	String codegen(float data[], int numSamples)
+	{
+		if(numSamples < C_LEN)
+			return "";
+		
+		whiten(data, numSamples);
+		int frames = subbandAnalysis(numSamples);
+		int count = fingerprint(frames);
+		
+		code.set(times, hashes, count);
+		return code.encode();
+	}
+	
+	/**
+	 * Whitening: an adaptive 40th order LPC inverse filter, updated every 10000 samples
+	 */
+	private void whiten(float samples[], int numSamples)
+	{
+		if(whitened.length < numSamples)
+			whitened = new float[numSamples];
+		
+		for(int i = 0; i <= WHITENING_ORDER; i++)
+		{
+			r[i] = 0;
+			xo[i] = 0;
+			ai[i] = 0;
+		}
+		r[0] = WHITENING_R0;
+		
+		int blockLength;
+		for(int i = 0; i < numSamples; i += WHITENING_BLOCK_SIZE)
+		{
+			// the native code never whitens the very last sample
+			if(i + WHITENING_BLOCK_SIZE >= numSamples)
+				blockLength = numSamples - i - 1;
+			else
+				blockLength = WHITENING_BLOCK_SIZE;
+			
+			whitenBlock(samples, i, blockLength);
+		}
+		whitened[numSamples - 1] = 0;
+	}
+	
+	private void whitenBlock(float samples[], int start, int blockSize)
+	{
+		final int p = WHITENING_ORDER;
+		int i, j;
+		
+		// calculate autocorrelation of current block
+		for(i = 0; i <= p; i++)
+		{
+			float acc = 0;
+			for(j = i; j < blockSize; j++)
+				acc += samples[j + start] * samples[j - i + start];
+			
+			// smoothed update
+			r[i] += WHITENING_ALPHA * (acc - r[i]);
+		}
+		
+		// calculate new filter coefficients
+		// Durbin's recursion, per p. 411 of Rabiner & Schafer 1978
+		float e = r[0];
+		for(i = 1; i <= p; i++)
+		{
+			float sumalphaR = 0;
+			for(j = 1; j < i; j++)
+				sumalphaR += ai[j] * r[i - j];
+			
+			float ki = (r[i] - sumalphaR) / e;
+			ai[i] = ki;
+			for(j = 1; j <= i / 2; j++)
+			{
+				float aai = ai[j];
+				ai[j] -= ki * ai[i - j];
+				if(j < (i - j))
+					ai[i - j] -= ki * aai;
+			}
+			e = (1 - ki * ki) * e;
+		}
+		
+		// calculate new output
+		for(i = 0; i < blockSize; i++)
+		{
+			float acc = samples[i + start];
+			int minip = Math.min(i, p);
+			
+			for(j = i + 1; j <= p; j++)
+				acc -= ai[j] * xo[p + i - j];
+			
+			for(j = 1; j <= minip; j++)
+				acc -= ai[j] * samples[i - j + start];
+			
+			whitened[i + start] = acc;
+		}
+		
+		// save last few frames of input
+		for(i = 0; i <= p; i++)
+		{
+			int index = blockSize - 1 - p + i + start;
+			xo[i] = index >= 0 ? samples[index] : 0;
+		}
+	}
+	
+	/**
+	 * Subband analysis: energy in 8 bands for every 8 samples
+	 * 
+	 * @return the number of frames
+	 */
+	private int subbandAnalysis(int numSamples)
+	{
+		int frames = (numSamples - C_LEN + 1) / SUBBANDS;
+		if(energy.length < SUBBANDS * frames)
+			energy = new float[SUBBANDS * frames];
+		
+		for(int t = 0; t < frames; t++)
+		{
+			int offset = t * SUBBANDS;
+			for(int i = 0; i < C_LEN; i++)
+				z[i] = whitened[offset + i] * C[i];
+			
+			for(int i = 0; i < M_COLS; i++)
+				y[i] = z[i];
+			
+			for(int i = 0; i < M_COLS; i++)
+			{
+				for(int j = 1; j < M_ROWS; j++)
+					y[i] += z[i + M_COLS * j];
+			}
+			
+			for(int i = 0; i < M_ROWS; i++)
+			{
+				float dr = 0, di = 0;
+				for(int j = 0; j < M_COLS; j++)
+				{
+					dr += MR[i * M_COLS + j] * y[j];
+					di -= MI[i * M_COLS + j] * y[j];
+				}
+				
+				// row-major (band, frame) storage, same as the native matrix
+				energy[i * frames + t] = dr * dr + di * di;
+			}
+		}
+		
+		return frames;
+	}
+	
+	/**
+	 * Onset detection: smooths the band energies with a hann window, then finds the onsets
+	 * in every band with an adaptive threshold
+	 * 
+	 * @return the number of smoothed frames, the onsets are stored per band in rows of that length
+	 */
+	private int adaptiveOnsets(int frames)
+	{
+		final int nbn = BN.length;
+		
+		// the native code takes the floor of a float quarter of the frames
+		int nc = (int) (Math.floor((float) frames * (float) 0.25) - 1.0);
+		if(nc < 1)
+			nc = 0;
+		
+		if(smoothed.length < SUBBANDS * nc)
+			smoothed = new float[SUBBANDS * nc];
+		if(onsets.length < SUBBANDS * nc)
+			onsets = new int[SUBBANDS * nc];
+		
+		// (frame, band) storage, the energy matrix is (band, frame)
+		for(int i = 0; i < nc; i++)
+		{
+			for(int j = 0; j < SUBBANDS; j++)
+			{
+				float acc = 0;
+				for(int k = 0; k < HANN_LENGTH; k++)
+					acc += energy[j * frames + i * HANN_HOP + k] * HANN[k];
+				
+				smoothed[i * SUBBANDS + j] = (float) Math.sqrt(acc);
+			}
+		}
+		
+		for(int j = 0; j < SUBBANDS; j++)
+		{
+			onsetCount[j] = 0;
+			taus[j] = 1.0;
+			h[j] = nc > 0 ? smoothed[j] : 0;
+			lcontact[j] = 0;
+			tsince[j] = 0;
+			y0[j] = 0;
+		}
+		
+		for(int i = 0; i < nc; i++)
+		{
+			int pe = i * SUBBANDS;
+			for(int j = 0; j < SUBBANDS; j++)
+			{
+				double xn = 0;
+				// calculate the filter - FIR part, the difference is taken in float
+				if(i >= 2 * nbn)
+				{
+					for(int k = 0; k < nbn; k++)
+						xn += BN[k] * (double) (smoothed[pe + j - SUBBANDS * k] - smoothed[pe + j - SUBBANDS * (2 * nbn - k)]);
+				}
+				// IIR part
+				xn = xn + A1 * y0[j];
+				// remember the last filtered level
+				y0[j] = xn;
+				
+				int contact = (xn > h[j]) ? 1 : 0;
+				
+				if(contact == 1)
+				{
+					// update with new threshold
+					h[j] = xn * OVERFACT;
+				}
+				else
+				{
+					// apply decays
+					h[j] = h[j] * decay((int) taus[j]);
+					
+					if(lcontact[j] == 1)
+					{
+						// detach
+						if(onsetCount[j] > 0 && onsets[j * nc + onsetCount[j] - 1] > i - DEADTIME)
+						{
+							// overwrite last-written time
+							onsetCount[j]--;
+						}
+						onsets[j * nc + onsetCount[j]++] = i;
+						tsince[j] = 0;
+					}
+				}
+				
+				tsince[j]++;
+				if(tsince[j] > ONSET_TARGET)
+				{
+					taus[j] = taus[j] - 1;
+					if(taus[j] < 1)
+						taus[j] = 1;
+				}
+				else
+				{
+					taus[j] = taus[j] + 1;
+				}
+				
+				lcontact[j] = contact;
+			}
+		}
+		
+		return nc;
+	}
+	
+	/**
+	 * @return exp(-1 / tau), taus only take integer values so they are computed once
+	 */
+	private double decay(int tau)
+	{
+		if(tau >= decay.length)
+		{
+			double table[] = new double[Math.max(tau + 1, decay.length * 2)];
+			System.arraycopy(decay, 0, table, 0, decay.length);
+			decay = table;
+		}
+		
+		double value = decay[tau];
+		if(value == 0)
+		{
+			value = StrictMath.exp(-1.0 / (double) tau);
+			decay[tau] = value;
+		}
+		return value;
+	}
+	
+	/**
+	 * Hashing: every onset is combined with the following ones, the quantized time deltas
+	 * and the band are hashed into 20 bit codes
+	 * 
+	 * @return the number of codes
+	 */
+	private int fingerprint(int frames)
+	{
+		int onsetFrames = adaptiveOnsets(frames);
+		int onsetTotal = 0;
+		for(int band = 0; band < SUBBANDS; band++)
+			onsetTotal += onsetCount[band];
+		
+		if(times.length < onsetTotal * 6)
+		{
+			times = new int[onsetTotal * 6];
+			hashes = new int[onsetTotal * 6];
+		}
+		
+		int actualCodes = 0;
+		for(int band = 0; band < SUBBANDS; band++)
+		{
+			int count = onsetCount[band];
+			if(count <= 2)
+				continue;
+			
+			int base = band * onsetFrames;
+			for(int onset = 0; onset < count - 2; onset++)
+			{
+				// What time was this onset at?
+				int timeForOnset = quantizedTimeForFrameAbsolute(onsets[base + onset]);
+				
+				for(int i = 0; i < 6; i++)
+				{
+					p0[i] = 0;
+					p1[i] = 0;
+				}
+				
+				int nhashes = 6;
+				if(onset == count - 4)
+					nhashes = 3;
+				if(onset == count - 3)
+					nhashes = 1;
+				
+				int o0 = onsets[base + onset];
+				int o1 = onsets[base + onset + 1];
+				int o2 = onsets[base + onset + 2];
+				p0[0] = o1 - o0;
+				p1[0] = o2 - o1;
+				if(nhashes > 1)
+				{
+					int o3 = onsets[base + onset + 3];
+					p0[1] = o1 - o0;
+					p1[1] = o3 - o1;
+					p0[2] = o2 - o0;
+					p1[2] = o3 - o2;
+					if(nhashes > 3)
+					{
+						int o4 = onsets[base + onset + 4];
+						p0[3] = o1 - o0;
+						p1[3] = o4 - o1;
+						p0[4] = o2 - o0;
+						p1[4] = o4 - o2;
+						p0[5] = o3 - o0;
+						p1[5] = o4 - o3;
+					}
+				}
+				
+				// For each pair emit a code, the native code always emits 6 even when some pairs are left empty
+				for(int k = 0; k < 6; k++)
+				{
+					// Quantize the time deltas to 23ms
+					short timeDelta0 = (short) quantizedTimeForFrameDelta(p0[k]);
+					short timeDelta1 = (short) quantizedTimeForFrameDelta(p1[k]);
+					
+					// Create a key from the time deltas and the band index, little endian like the native memcpy
+					hashMaterial[0] = (byte) timeDelta0;
+					hashMaterial[1] = (byte) (timeDelta0 >> 8);
+					hashMaterial[2] = (byte) timeDelta1;
+					hashMaterial[3] = (byte) (timeDelta1 >> 8);
+					hashMaterial[4] = (byte) band;
+					
+					// Set the code alongside the time of onset
+					times[actualCodes] = timeForOnset;
+					hashes[actualCodes] = murmurHash2(hashMaterial, 5, HASH_SEED) & HASH_BITMASK;
+					actualCodes++;
+				}
+			}
+		}
+		
+		return actualCodes;
+	}
+	
+	private static int quantizedTimeForFrameDelta(int frameDelta)
+	{
+		double timeForFrameDelta = (double) frameDelta / ((double) SAMPLING_RATE / 32.0);
+		return toUnsigned(((int) Math.floor((timeForFrameDelta * 1000.0) / (float) QUANTIZE_DT_S) * QUANTIZE_DT_S) / Math.floor(QUANTIZE_DT_S * 1000.0));
+	}
+	
+	private static int quantizedTimeForFrameAbsolute(int frame)
+	{
+		double timeForFrame = (double) frame / ((double) SAMPLING_RATE / 32.0);
+		return toUnsigned(((int) Math.rint((timeForFrame * 1000.0) / (float) QUANTIZE_A_S) * QUANTIZE_A_S) / Math.floor(QUANTIZE_DT_S * 1000.0));
+	}
+	
+	private static int toUnsigned(double value)
+	{
+		// double to uint conversion, the values are always positive and small
+		return (int) (long) value;
+	}
+	
+	@SuppressWarnings("fallthrough")
+	static int murmurHash2(byte data[], int length, int seed)
+	{
+		final int m = 0x5bd1e995;
+		final int r = 24;
+		
+		int h = seed ^ length;
+		int i = 0;
+		int len = length;
+		while(len >= 4)
+		{
+			int k = (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8) | ((data[i + 2] & 0xff) << 16) | ((data[i + 3] & 0xff) << 24);
+			k *= m;
+			k ^= k >>> r;
+			k *= m;
+			h *= m;
+			h ^= k;
+			i += 4;
+			len -= 4;
+		}
+		
+		switch(len)
+		{
+			case 3:
+				h ^= (data[i + 2] & 0xff) << 16;
+				// fall through
+			case 2:
+				h ^= (data[i + 1] & 0xff) << 8;
+				// fall through
+			case 1:
+				h ^= (data[i] & 0xff);
+				h *= m;
+		}
+		
+		h ^= h >>> 13;
+		h *= m;
+		h ^= h >>> 15;
+		return h;
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * LatencyHistogram.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram<br>
+ * A lock-free, log-linear histogram in the spirit of HdrHistogram. Every power of two
+ * range is split in 32 linear sub-buckets, which keeps the relative error of the
+ * reported values under ~3% for any latency between 1 nanosecond and ~73 minutes.<br>
+ * Recording is wait-free and does not allocate, so it can be called from the
+ * fingerprinting threads.
+ *
+ */
+public class LatencyHistogram
+{
+	private final static int SUB_BUCKET_BITS = 5;
+	private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	
+	// values above 2^(MAX_EXPONENT + 1) nanoseconds are clamped to the last bucket
+	private final static int MAX_EXPONENT = 41;
+	private final static int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	
+	/**
+	 * Records a latency value
+	 * 
+	 * @param nanos the latency in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long nanos)
+	{
+		if(nanos < 0)
+			nanos = 0;
+		
+		counts.incrementAndGet(indexFor(nanos));
+		totalNanos.addAndGet(nanos);
+		
+		long max = maxNanos.get();
+		while(nanos > max && !maxNanos.compareAndSet(max, nanos))
+			max = maxNanos.get();
+	}
+	
+	/**
+	 * Takes a point in time copy of the histogram.<br>
+	 * Values recorded while the copy is taken may or may not be included.
+	 * 
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot()
+	{
+		long copy[] = new long[BUCKET_COUNT];
+		long count = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++)
+		{
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+		
+		return new Snapshot(copy, count, totalNanos.get(), maxNanos.get());
+	}
+	
+	static int indexFor(long value)
+	{
+		if(value < SUB_BUCKET_COUNT)
+			return (int) value;
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if(exponent > MAX_EXPONENT)
+			return BUCKET_COUNT - 1;
+		
+		int shift = exponent - SUB_BUCKET_BITS;
+		return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+	}
+	
+	static long highestValueAt(int index)
+	{
+		if(index < SUB_BUCKET_COUNT)
+			return index;
+		
+		int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+		int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+		return ((long) (SUB_BUCKET_COUNT + subBucket) << shift) + (1L << shift) - 1;
+	}
+	
+	/**
+	 * Immutable copy of a LatencyHistogram
+	 */
+	public static class Snapshot
+	{
+		private final long counts[];
+		private final long count;
+		private final long totalNanos;
+		private final long maxNanos;
+		
+		Snapshot(long counts[], long count, long totalNanos, long maxNanos)
+		{
+			this.counts = counts;
+			this.count = count;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+		}
+		
+		/**
+		 * @return the number of recorded values
+		 */
+		public long getCount()
+		{
+			return count;
+		}
+		
+		/**
+		 * @return the largest recorded value in nanoseconds
+		 */
+		public long getMax()
+		{
+			return maxNanos;
+		}
+		
+		/**
+		 * @return the mean of the recorded values in nanoseconds
+		 */
+		public double getMean()
+		{
+			return count == 0 ? 0 : (double) totalNanos / count;
+		}
+		
+		/**
+		 * Returns the value at the given percentile
+		 * 
+		 * @param percentile the percentile, in the range [0, 100]
+		 * @return the value in nanoseconds, rounded up to the end of its bucket
+		 */
+		public long getValueAtPercentile(double percentile)
+		{
+			if(count == 0)
+				return 0;
+			
+			double p = Math.max(Math.min(percentile, 100), 0);
+			long target = Math.max((long) Math.ceil(p / 100.0 * count), 1);
+			long seen = 0;
+			for(int i = 0; i < counts.length; i++)
+			{
+				seen += counts[i];
+				if(seen >= target)
+					return Math.min(highestValueAt(i), maxNanos);
+			}
+			
+			return maxNanos;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.US, "count=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms", 
+					count, getMean() / 1e6, 
+					getValueAtPercentile(50) / 1e6, getValueAtPercentile(90) / 1e6, 
+					getValueAtPercentile(99) / 1e6, maxNanos / 1e6);
+		}
+	}
+}
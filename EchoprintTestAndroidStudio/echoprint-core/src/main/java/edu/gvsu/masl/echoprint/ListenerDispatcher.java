@@ -0,0 +1,354 @@
+/**
+ * ListenerDispatcher.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.util.Hashtable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Listener dispatcher<br>
+ * Forwards the fingerprinting events to a FingerprinterListener through an Executor.<br>
+ * Events are delivered with preallocated, recycled runnables so dispatching does not
+ * create garbage on the fingerprinting thread. If no executor is set the listener is
+ * called synchronously on the calling thread.<br>
+ * When coalescing is enabled the high frequency events (pass start / finish and
+ * generated codes) are posted at most once while a previous one is still pending,
+ * the pending event then delivers the latest value. Match, no match, error and
+ * start / finish events are never coalesced.<br>
+ * A coalesced event keeps the queue position of the first post it merges, so it can
+ * be delivered ahead of events posted between the merged posts: the listener may get
+ * didGenerateFingerprintCode with the code of a later pass before the match or no match
+ * of an earlier code, and a merged didFinishListeningPass before the match of its pass.
+ * Listeners that enable coalescing should treat these callbacks as progress hints and
+ * rely on the match, no match and finish callbacks for the results.<br>
+ * The executor must run every submitted runnable exactly once, since the runnables
+ * are recycled after they run.
+ *
+ */
+public class ListenerDispatcher
+{
+	private final static int WILL_START_LISTENING = 0;
+	private final static int DID_FINISH_LISTENING = 1;
+	private final static int WILL_START_LISTENING_PASS = 2;
+	private final static int DID_FINISH_LISTENING_PASS = 3;
+	private final static int DID_GENERATE_FINGERPRINT_CODE = 4;
+	private final static int DID_FIND_MATCH_FOR_CODE = 5;
+	private final static int DID_NOT_FIND_MATCH_FOR_CODE = 6;
+	private final static int DID_FAIL_WITH_EXCEPTION = 7;
+	
+	private final static int DEFAULT_POOL_SIZE = 8;
+	
+	private final FingerprinterListener listener;
+	private final Executor executor;
+	private volatile boolean coalescing;
+	private volatile FingerprinterMetrics metrics;
+	
+	// recycled events, guarded by the array itself
+	private final Event pool[];
+	private int pooled;
+	
+	// coalesced events, there's only one instance of each
+	private final CoalescedEvent willStartListeningPassEvent = new CoalescedEvent(WILL_START_LISTENING_PASS);
+	private final CoalescedEvent didFinishListeningPassEvent = new CoalescedEvent(DID_FINISH_LISTENING_PASS);
+	private final CoalescedEvent didGenerateFingerprintCodeEvent = new CoalescedEvent(DID_GENERATE_FINGERPRINT_CODE);
+	
+	/**
+	 * Constructor for the class
+	 * 
+	 * @param listener the listener that will receive the callbacks, may be null
+	 * @param executor the executor used to deliver the callbacks, null to call the listener synchronously
+	 */
+	public ListenerDispatcher(FingerprinterListener listener, Executor executor)
+	{
+		this(listener, executor, DEFAULT_POOL_SIZE);
+	}
+	
+	/**
+	 * Constructor for the class
+	 * 
+	 * @param listener the listener that will receive the callbacks, may be null
+	 * @param executor the executor used to deliver the callbacks, null to call the listener synchronously
+	 * @param poolSize the number of event objects to keep around for reuse
+	 */
+	public ListenerDispatcher(FingerprinterListener listener, Executor executor, int poolSize)
+	{
+		this.listener = listener;
+		this.executor = executor;
+		
+		this.pool = new Event[Math.max(poolSize, 1)];
+		if(executor != null)
+		{
+			for(int i = 0; i < pool.length; i++)
+				pool[i] = new Event();
+			
+			pooled = pool.length;
+		}
+	}
+	
+	/**
+	 * Enables or disables the coalescing of high frequency events
+	 * 
+	 * @param coalescing if true, pass and code events are merged while one is pending
+	 */
+	public void setCoalescing(boolean coalescing)
+	{
+		this.coalescing = coalescing;
+	}
+	
+	public boolean isCoalescing()
+	{
+		return coalescing;
+	}
+	
+	/**
+	 * Sets the metrics where the dispatch latency is recorded
+	 * 
+	 * @param metrics the metrics, null to stop recording
+	 */
+	public void setMetrics(FingerprinterMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+	
+	public FingerprinterListener getListener()
+	{
+		return listener;
+	}
+	
+	public void willStartListening()
+	{
+		post(WILL_START_LISTENING, null, null, null);
+	}
+	
+	public void didFinishListening()
+	{
+		post(DID_FINISH_LISTENING, null, null, null);
+	}
+	
+	public void willStartListeningPass()
+	{
+		if(coalescing && executor != null)
+			postCoalesced(willStartListeningPassEvent, null);
+		else
+			post(WILL_START_LISTENING_PASS, null, null, null);
+	}
+	
+	public void didFinishListeningPass()
+	{
+		if(coalescing && executor != null)
+			postCoalesced(didFinishListeningPassEvent, null);
+		else
+			post(DID_FINISH_LISTENING_PASS, null, null, null);
+	}
+	
+	public void didGenerateFingerprintCode(String code)
+	{
+		if(coalescing && executor != null)
+			postCoalesced(didGenerateFingerprintCodeEvent, code);
+		else
+			post(DID_GENERATE_FINGERPRINT_CODE, code, null, null);
+	}
+	
+	public void didFindMatchForCode(Hashtable<String, String> table, String code)
+	{
+		post(DID_FIND_MATCH_FOR_CODE, code, table, null);
+	}
+	
+	public void didNotFindMatchForCode(String code)
+	{
+		post(DID_NOT_FIND_MATCH_FOR_CODE, code, null, null);
+	}
+	
+	public void didFailWithException(Exception e)
+	{
+		post(DID_FAIL_WITH_EXCEPTION, null, null, e);
+	}
+	
+	private void post(int type, String code, Hashtable<String, String> table, Exception e)
+	{
+		if(listener == null)
+			return;
+		
+		if(executor == null)
+		{
+			long time = System.nanoTime();
+			deliver(type, code, table, e);
+			recordDispatch(time);
+			return;
+		}
+		
+		Event event = obtain();
+		event.postedAt = System.nanoTime();
+		event.type = type;
+		event.code = code;
+		event.table = table;
+		event.exception = e;
+		
+		try
+		{
+			executor.execute(event);
+		}
+		catch(RuntimeException ex)
+		{
+			recycle(event);
+			throw ex;
+		}
+	}
+	
+	private void postCoalesced(CoalescedEvent event, String code)
+	{
+		if(listener == null)
+			return;
+		
+		// publish the value first, a pending event will pick it up
+		event.code = code;
+		if(!event.pending.compareAndSet(false, true))
+			return;
+		
+		event.postedAt = System.nanoTime();
+		try
+		{
+			executor.execute(event);
+		}
+		catch(RuntimeException ex)
+		{
+			event.pending.set(false);
+			throw ex;
+		}
+	}
+	
+	private void recordDispatch(long postedAt)
+	{
+		FingerprinterMetrics metrics = this.metrics;
+		if(metrics != null)
+			metrics.record(FingerprinterMetrics.Stage.DISPATCH, System.nanoTime() - postedAt);
+	}
+	
+	private void deliver(int type, String code, Hashtable<String, String> table, Exception e)
+	{
+		switch(type)
+		{
+			case WILL_START_LISTENING:
+				listener.willStartListening();
+				break;
+			case DID_FINISH_LISTENING:
+				listener.didFinishListening();
+				break;
+			case WILL_START_LISTENING_PASS:
+				listener.willStartListeningPass();
+				break;
+			case DID_FINISH_LISTENING_PASS:
+				listener.didFinishListeningPass();
+				break;
+			case DID_GENERATE_FINGERPRINT_CODE:
+				listener.didGenerateFingerprintCode(code);
+				break;
+			case DID_FIND_MATCH_FOR_CODE:
+				listener.didFindMatchForCode(table, code);
+				break;
+			case DID_NOT_FIND_MATCH_FOR_CODE:
+				listener.didNotFindMatchForCode(code);
+				break;
+			case DID_FAIL_WITH_EXCEPTION:
+				listener.didFailWithException(e);
+				break;
+		}
+	}
+	
+	private Event obtain()
+	{
+		synchronized(pool)
+		{
+			if(pooled > 0)
+			{
+				Event event = pool[--pooled];
+				pool[pooled] = null;
+				return event;
+			}
+		}
+		
+		// more events in flight than pooled ones, the extra one is kept on recycle if there's room
+		return new Event();
+	}
+	
+	private void recycle(Event event)
+	{
+		event.code = null;
+		event.table = null;
+		event.exception = null;
+		
+		synchronized(pool)
+		{
+			if(pooled < pool.length)
+				pool[pooled++] = event;
+		}
+	}
+	
+	private final class Event implements Runnable
+	{
+		int type;
+		String code;
+		Hashtable<String, String> table;
+		Exception exception;
+		long postedAt;
+		
+		public void run()
+		{
+			try
+			{
+				deliver(type, code, table, exception);
+				recordDispatch(postedAt);
+			}
+			finally
+			{
+				recycle(this);
+			}
+		}
+	}
+	
+	private final class CoalescedEvent implements Runnable
+	{
+		final int type;
+		final AtomicBoolean pending = new AtomicBoolean();
+		volatile String code;
+		volatile long postedAt;
+		
+		CoalescedEvent(int type)
+		{
+			this.type = type;
+		}
+		
+		public void run()
+		{
+			// clear the flag before reading the value so a newer value always gets delivered
+			long posted = postedAt;
+			pending.set(false);
+			deliver(type, code, null, null);
+			recordDispatch(posted);
+		}
+	}
+}
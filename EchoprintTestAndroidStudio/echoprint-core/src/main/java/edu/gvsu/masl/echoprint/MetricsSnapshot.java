@@ -0,0 +1,87 @@
+/**
+ * MetricsSnapshot.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import edu.gvsu.masl.echoprint.FingerprinterMetrics.Counter;
+import edu.gvsu.masl.echoprint.FingerprinterMetrics.Stage;
+
+/**
+ * Metrics snapshot<br>
+ * Immutable copy of the FingerprinterMetrics histograms and counters.
+ *
+ */
+public class MetricsSnapshot
+{
+	private final long timestamp;
+	private final LatencyHistogram.Snapshot stages[];
+	private final long counters[];
+	
+	MetricsSnapshot(long timestamp, LatencyHistogram.Snapshot stages[], long counters[])
+	{
+		this.timestamp = timestamp;
+		this.stages = stages;
+		this.counters = counters;
+	}
+	
+	/**
+	 * @return the time the snapshot was taken, in milliseconds since the epoch
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+	
+	/**
+	 * @param stage the stage
+	 * @return the latency histogram of the stage
+	 */
+	public LatencyHistogram.Snapshot getStage(Stage stage)
+	{
+		return stages[stage.ordinal()];
+	}
+	
+	/**
+	 * @param counter the counter
+	 * @return the value of the counter
+	 */
+	public long getCounter(Counter counter)
+	{
+		return counters[counter.ordinal()];
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for(Stage stage : Stage.values())
+			sb.append(stage.name().toLowerCase()).append(": ").append(getStage(stage)).append('\n');
+		
+		for(Counter counter : Counter.values())
+			sb.append(counter.name().toLowerCase()).append('=').append(getCounter(counter)).append(' ');
+		
+		return sb.toString().trim();
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * NativeLibraryLoader.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Native library loader<br>
+ * Loads the JNI libraries on Android and on desktop JVMs. The library is looked up in order:<br>
+ * 1. in the folder set in the echoprint.library.path system property<br>
+ * 2. with System.loadLibrary(), which covers Android and java.library.path<br>
+ * 3. in the classpath, under libs/&lt;platform&gt;/, e.g. libs/linux-x86_64/libechoprint-jni.so.
+ * The library is copied to a temporary file and loaded from there.
+ *
+ */
+public class NativeLibraryLoader
+{
+	public final static String LIBRARY_PATH_PROPERTY = "echoprint.library.path";
+	
+	private NativeLibraryLoader()
+	{}
+	
+	/**
+	 * Loads a native library
+	 * 
+	 * @param name the library name, without prefix or extension (e.g. "echoprint-jni")
+	 * @throws UnsatisfiedLinkError if the library can't be found for this platform
+	 */
+	public static void load(String name)
+	{
+		String fileName = System.mapLibraryName(name);
+		
+		String libraryPath = System.getProperty(LIBRARY_PATH_PROPERTY);
+		if(libraryPath != null)
+		{
+			System.load(new File(libraryPath, fileName).getAbsolutePath());
+			return;
+		}
+		
+		try
+		{
+			System.loadLibrary(name);
+			return;
+		}
+		catch(UnsatisfiedLinkError e)
+		{
+			// on Android the library is always packaged in the apk, nothing else to try
+			if(isAndroid())
+				throw e;
+		}
+		
+		String resource = "/libs/" + getPlatform() + "/" + fileName;
+		InputStream in = NativeLibraryLoader.class.getResourceAsStream(resource);
+		if(in == null)
+			throw new UnsatisfiedLinkError("no " + name + " in " + LIBRARY_PATH_PROPERTY + ", java.library.path or classpath (" + resource + ")");
+		
+		try
+		{
+			System.load(extract(in, fileName).getAbsolutePath());
+		}
+		catch(IOException e)
+		{
+			UnsatisfiedLinkError error = new UnsatisfiedLinkError("can't extract " + resource + ": " + e.getMessage());
+			error.initCause(e);
+			throw error;
+		}
+	}
+	
+	/**
+	 * @return the platform folder name for this JVM, e.g. linux-x86_64
+	 */
+	public static String getPlatform()
+	{
+		String os = System.getProperty("os.name", "").toLowerCase(Locale.US);
+		String arch = System.getProperty("os.arch", "").toLowerCase(Locale.US);
+		
+		if(os.startsWith("linux"))
+			os = "linux";
+		else if(os.startsWith("mac") || os.startsWith("darwin"))
+			os = "mac";
+		else if(os.startsWith("windows"))
+			os = "windows";
+		
+		if(arch.equals("amd64") || arch.equals("x86_64"))
+			arch = "x86_64";
+		else if(arch.equals("i386") || arch.equals("i486") || arch.equals("i586") || arch.equals("i686"))
+			arch = "x86";
+		else if(arch.equals("arm64"))
+			arch = "aarch64";
+		
+		return os + "-" + arch;
+	}
+	
+	private static boolean isAndroid()
+	{
+		return System.getProperty("java.vm.vendor", "").contains("Android") 
+				|| "Dalvik".equals(System.getProperty("java.vm.name"));
+	}
+	
+	private static File extract(InputStream in, String fileName) throws IOException
+	{
+		File file = File.createTempFile("echoprint-", "-" + fileName);
+		file.deleteOnExit();
+		
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			byte buffer[] = new byte[8192];
+			int n;
+			while((n = in.read(buffer)) != -1)
+				out.write(buffer, 0, n);
+		}
+		finally
+		{
+			out.close();
+			in.close();
+		}
+		
+		return file;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * QueryResponseParser.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Hashtable;
+
+/**
+ * Query response parser<br>
+ * Parses the JSON returned by the MooMash API (http://www.mooma.sh/api.html) into a QueryResult.
+ *
+ */
+public class QueryResponseParser
+{
+	/**
+	 * Parses a server response
+	 * 
+	 * @param response the JSON response
+	 * @return the result of the query
+	 * @throws JSONException if the response is not valid JSON or misses required fields
+	 */
+	public QueryResult parse(String response) throws JSONException
+	{
+		// On successful recognition the MooMash API returns a JSON structure such as:
+		// {"response":{"songs":[{"artist_id":"","artist_name":"P!nk","id":"","score":54,"title":"Don't Let Me Get Me","message":"OK"}],"status":{"version":"1.0","message":"Success","code":0}}}
+		JSONObject jobj = new JSONObject(response);
+
+		if (jobj.has("response")) {
+			JSONObject responseObject = jobj.getJSONObject("response");
+
+			if (responseObject.has("songs")) {
+				JSONArray songsArray = responseObject.getJSONArray("songs");
+
+				if (songsArray.length() > 0) {
+					JSONObject songObject = songsArray.getJSONObject(0);
+
+					Hashtable<String, String> match = new Hashtable<String, String>();
+					match.put("artist_name", songObject.getString("artist_name"));
+					match.put("title", songObject.getString("title"));
+
+					return QueryResult.match(match);
+				}
+				else {
+					return QueryResult.noMatch();
+				}
+			}
+			
+			return QueryResult.empty();
+		}
+		else {
+			return QueryResult.error("result JSON parsing error");
+		}
+
+				// Old parsing code for Echonest API.
+				/*
+	    		if(jobj.has("code"))
+	    			Log.d("Fingerprinter", "Response code:" + jobj.getInt("code") + " (" + this.messageForCode(jobj.getInt("code")) + ")");
+	    		
+	    		if(jobj.has("match"))
+	    		{
+	    			if(jobj.getBoolean("match"))
+	    			{
+	    				Hashtable<String, String> match = new Hashtable<String, String>();
+	    				match.put(SCORE_KEY, jobj.getDouble(SCORE_KEY) + "");
+	    				match.put(TRACK_ID_KEY, jobj.getString(TRACK_ID_KEY));
+	    				
+	    				// the metadata dictionary IS NOT included by default in the API demo server
+	    				// replace line 66/67 in API.py with:
+	    				// return json.dumps({"ok":True,"message":response.message(), "match":response.match(), "score":response.score, \
+                        // "qtime":response.qtime, "track_id":response.TRID, "total_time":response.total_time, "metadata":response.metadata})
+	    				if(jobj.has("metadata"))
+	    				{
+	    					JSONObject metadata = jobj.getJSONObject("metadata");
+		    						    				
+		    				if(metadata.has(SCORE_KEY)) match.put(META_SCORE_KEY, metadata.getDouble(SCORE_KEY) + "");
+		    				if(metadata.has(TITLE_KEY)) match.put(TITLE_KEY, metadata.getString(TITLE_KEY));
+		    				if(metadata.has(ARTIST_KEY)) match.put(ARTIST_KEY, metadata.getString(ARTIST_KEY));
+		    				if(metadata.has(ALBUM_KEY)) match.put(ALBUM_KEY, metadata.getString(ALBUM_KEY));
+	    				}
+	    				
+	    				didFindMatchForCode(match, code);
+	    			}
+    				else
+    					didNotFindMatchForCode(code);	    			
+	    		}	    		
+	    		else
+	    		{
+	    			didFailWithException(new Exception("Unknown error"));
+	    		}
+				*/
+	}
+	
+	private String messageForCode(int code)
+	{
+		try{
+			String codes[] = {
+					"NOT_ENOUGH_CODE", "CANNOT_DECODE", "SINGLE_BAD_MATCH", 
+					"SINGLE_GOOD_MATCH", "NO_RESULTS", "MULTIPLE_GOOD_MATCH_HISTOGRAM_INCREASED",
+					"MULTIPLE_GOOD_MATCH_HISTOGRAM_DECREASED", "MULTIPLE_BAD_HISTOGRAM_MATCH", "MULTIPLE_GOOD_MATCH"
+					}; 
+	
+			return codes[code];
+		}
+		catch(ArrayIndexOutOfBoundsException e)
+		{
+			return "UNKNOWN";
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * QueryResult.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.util.Hashtable;
+
+/**
+ * Query result<br>
+ * The outcome of a fingerprint code query as parsed from the server response.
+ *
+ */
+public class QueryResult
+{
+	public enum Status
+	{
+		/** the server found a match, the metadata is in getMatch() */
+		MATCH,
+		/** the server did not find a match */
+		NO_MATCH,
+		/** the response could not be understood, the reason is in getMessage() */
+		ERROR,
+		/** the response had no result to report, nothing is forwarded to the listener */
+		EMPTY
+	}
+	
+	private final static QueryResult NO_MATCH_RESULT = new QueryResult(Status.NO_MATCH, null, null);
+	private final static QueryResult EMPTY_RESULT = new QueryResult(Status.EMPTY, null, null);
+	
+	private final Status status;
+	private final Hashtable<String, String> match;
+	private final String message;
+	
+	private QueryResult(Status status, Hashtable<String, String> match, String message)
+	{
+		this.status = status;
+		this.match = match;
+		this.message = message;
+	}
+	
+	public static QueryResult match(Hashtable<String, String> match)
+	{
+		return new QueryResult(Status.MATCH, match, null);
+	}
+	
+	public static QueryResult noMatch()
+	{
+		return NO_MATCH_RESULT;
+	}
+	
+	public static QueryResult error(String message)
+	{
+		return new QueryResult(Status.ERROR, null, message);
+	}
+	
+	public static QueryResult empty()
+	{
+		return EMPTY_RESULT;
+	}
+	
+	public Status getStatus()
+	{
+		return status;
+	}
+	
+	/**
+	 * @return the metadata returned from the server, null unless the status is MATCH
+	 */
+	public Hashtable<String, String> getMatch()
+	{
+		return match;
+	}
+	
+	/**
+	 * @return the error message, null unless the status is ERROR
+	 */
+	public String getMessage()
+	{
+		return message;
+	}
+}
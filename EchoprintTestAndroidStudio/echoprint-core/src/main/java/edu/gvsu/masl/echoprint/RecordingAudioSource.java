@@ -0,0 +1,114 @@
+/**
+ * RecordingAudioSource.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Recording audio source<br>
+ * Wraps another audio source and writes everything read from it to an output stream as
+ * raw 16 bit little endian PCM, the format ReplayAudioSource and the load test read back.
+ *
+ */
+public class RecordingAudioSource implements AudioSource
+{
+	private final AudioSource source;
+	private final OutputStream out;
+	private byte bytes[] = new byte[0];
+	
+	/**
+	 * @param source the source to record
+	 * @param out where the samples are written, closed on release()
+	 */
+	public RecordingAudioSource(AudioSource source, OutputStream out)
+	{
+		this.source = source;
+		this.out = out;
+	}
+	
+	public int getMinBufferSize()
+	{
+		return source.getMinBufferSize();
+	}
+	
+	public void start() throws IOException
+	{
+		source.start();
+	}
+	
+	public int read(short buffer[], int offset, int length)
+	{
+		int read = source.read(buffer, offset, length);
+		if(read <= 0)
+			return read;
+		
+		if(bytes.length < read * 2)
+			bytes = new byte[read * 2];
+		
+		for(int i = 0; i < read; i++)
+		{
+			short sample = buffer[offset + i];
+			bytes[2 * i] = (byte) sample;
+			bytes[2 * i + 1] = (byte) (sample >> 8);
+		}
+		
+		try
+		{
+			out.write(bytes, 0, read * 2);
+		}
+		catch(IOException e)
+		{
+			// the capture is lost but the fingerprinting can go on
+			e.printStackTrace();
+		}
+		
+		return read;
+	}
+	
+	public boolean isStopped()
+	{
+		return source.isStopped();
+	}
+	
+	public void stop()
+	{
+		source.stop();
+	}
+	
+	public void release()
+	{
+		source.release();
+		try
+		{
+			out.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/**
+ * ReplayAudioSource.java
+ * EchoprintCore
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replay audio source<br>
+ * Replays recorded samples, in real time like a microphone would deliver them or faster.
+ * The samples array is only read so a single capture can feed many sources at once.
+ *
+ */
+public class ReplayAudioSource implements AudioSource
+{
+	// about 93 ms of audio per read, in the order of what AudioRecord delivers
+	private final static int CHUNK_SIZE = 1024;
+	
+	private final short samples[];
+	private final double speed;
+	private final boolean loop;
+	private int position;
+	private long startedAt;
+	private long delivered;
+	private volatile boolean stopped;
+	
+	/**
+	 * @param samples mono, 16 bit PCM samples at 11025 Hz
+	 * @param speed 1 to replay in real time, 2 for twice as fast, etc. 0 to replay as fast as possible
+	 * @param loop if true, the replay starts over at the end of the samples instead of stopping
+	 */
+	public ReplayAudioSource(short samples[], double speed, boolean loop)
+	{
+		this(samples, 0, speed, loop);
+	}
+	
+	/**
+	 * @param samples mono, 16 bit PCM samples at 11025 Hz
+	 * @param offset the sample the replay starts at
+	 * @param speed 1 to replay in real time, 2 for twice as fast, etc. 0 to replay as fast as possible
+	 * @param loop if true, the replay starts over at the end of the samples instead of stopping
+	 */
+	public ReplayAudioSource(short samples[], int offset, double speed, boolean loop)
+	{
+		if(samples.length == 0)
+			throw new IllegalArgumentException("no samples to replay");
+		
+		this.samples = samples;
+		this.position = offset % samples.length;
+		this.speed = speed;
+		this.loop = loop;
+	}
+	
+	public int getMinBufferSize()
+	{
+		return 0;
+	}
+	
+	public void start()
+	{
+		startedAt = System.nanoTime();
+		delivered = 0;
+	}
+	
+	public int read(short buffer[], int offset, int length)
+	{
+		if(stopped)
+			return -1;
+		
+		if(position == samples.length)
+		{
+			if(!loop)
+			{
+				stopped = true;
+				return -1;
+			}
+			position = 0;
+		}
+		
+		int n = Math.min(Math.min(length, CHUNK_SIZE), samples.length - position);
+		System.arraycopy(samples, position, buffer, offset, n);
+		position += n;
+		delivered += n;
+		
+		if(speed > 0)
+			waitForRealTime();
+		
+		return n;
+	}
+	
+	private void waitForRealTime()
+	{
+		// don't return the samples before they would have been recorded
+		long due = startedAt + (long) (delivered * 1e9 / (FingerprintPipeline.SAMPLE_RATE * speed));
+		long wait = due - System.nanoTime();
+		if(wait <= 0)
+			return;
+		
+		try
+		{
+			Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+		}
+		catch(InterruptedException e)
+		{
+			stopped = true;
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	public boolean isStopped()
+	{
+		return stopped;
+	}
+	
+	public void stop()
+	{
+		stopped = true;
+	}
+	
+	public void release()
+	{}
+	
+	/**
+	 * Reads a capture, either raw 16 bit little endian PCM as written by RecordingAudioSource or
+	 * a WAV file with mono, 16 bit PCM at 11025 Hz
+	 * 
+	 * @param in the stream to read, closed once read
+	 * @return the samples
+	 * @throws IOException if the stream can't be read or the WAV format is not supported
+	 */
+	public static short[] readCapture(InputStream in) throws IOException
+	{
+		byte data[];
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte buffer[] = new byte[8192];
+			int n;
+			while((n = in.read(buffer)) != -1)
+				bytes.write(buffer, 0, n);
+			
+			data = bytes.toByteArray();
+		}
+		finally
+		{
+			in.close();
+		}
+		
+		int start = 0;
+		int end = data.length;
+		if(data.length >= 12 && data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F')
+		{
+			// walk the chunks looking for the format and the samples
+			boolean formatChecked = false;
+			int chunk = 12;
+			start = -1;
+			while(chunk + 8 <= data.length)
+			{
+				// the size is unsigned, anything past the end of the file is a corrupt header
+				int size = readInt(data, chunk + 4);
+				if(size < 0 || size > data.length - chunk - 8)
+					throw new IOException("invalid WAV file");
+				
+				if(data[chunk] == 'f' && data[chunk + 1] == 'm' && data[chunk + 2] == 't')
+				{
+					if(size < 16)
+						throw new IOException("invalid WAV file");
+					
+					int format = readShort(data, chunk + 8);
+					int channels = readShort(data, chunk + 10);
+					int rate = readInt(data, chunk + 12);
+					int bits = readShort(data, chunk + 22);
+					if(format != 1 || channels != 1 || rate != FingerprintPipeline.SAMPLE_RATE || bits != 16)
+						throw new IOException("unsupported WAV format: " + channels + " channels, " + rate + " Hz, " + bits + " bits, format " + format);
+					
+					formatChecked = true;
+				}
+				else if(data[chunk] == 'd' && data[chunk + 1] == 'a' && data[chunk + 2] == 't' && data[chunk + 3] == 'a')
+				{
+					start = chunk + 8;
+					end = start + size;
+					break;
+				}
+				chunk += 8 + size + (size & 1);
+			}
+			
+			if(!formatChecked || start < 0)
+				throw new IOException("invalid WAV file");
+		}
+		
+		short samples[] = new short[(end - start) / 2];
+		for(int i = 0; i < samples.length; i++)
+			samples[i] = (short) readShort(data, start + 2 * i);
+		
+		return samples;
+	}
+	
+	private static int readShort(byte data[], int offset)
+	{
+		return (data[offset] & 0xff) | (data[offset + 1] << 8);
+	}
+	
+	private static int readInt(byte data[], int offset)
+	{
+		return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8) | ((data[offset + 2] & 0xff) << 16) | (data[offset + 3] << 24);
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * CodegenBenchmark.java
+ * EchoprintBenchmark
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint.benchmark;
+
+import edu.gvsu.masl.echoprint.Codegen;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the fingerprint code generation with both engines. The native one includes
+ * the JNI transfer of the samples and requires a host build of libechoprint-jni, see
+ * NativeLibraryLoader.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodegenBenchmark
+{
+	@Param({"10", "20", "30"})
+	int seconds;
+	
+	@Param({PcmFixtures.SILENCE, PcmFixtures.TONE, PcmFixtures.MUSIC})
+	String signal;
+	
+	@Param({"NATIVE", "JAVA"})
+	Codegen.Engine engine;
+	
+	short data[];
+	float normalized[];
+	Codegen codegen;
+	
+	@Setup
+	public void setup()
+	{
+		data = PcmFixtures.create(signal, seconds);
+		codegen = new Codegen(engine);
+		normalized = codegen.normalize(data, data.length).clone();
+	}
+	
+	@Benchmark
+	public String codegen()
+	{
+		return codegen.generate(normalized, normalized.length);
+	}
+	
+	@Benchmark
+	public String normalizeAndCodegen()
+	{
+		return codegen.generate(data, data.length);
+	}
+}
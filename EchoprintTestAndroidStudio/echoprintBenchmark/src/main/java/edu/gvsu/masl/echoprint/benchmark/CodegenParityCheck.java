@@ -0,0 +1,118 @@
+/**
+ * CodegenParityCheck.java
+ * EchoprintBenchmark
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint.benchmark;
+
+import edu.gvsu.masl.echoprint.Codegen;
+import edu.gvsu.masl.echoprint.EchoprintCode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Codegen parity check<br>
+ * Generates the codes of every fixture with JavaCodegen and compares them with the codes of
+ * the native library. Exits with status 1 if any code string differs.<br>
+ * The native codes come from a host build of libechoprint-jni when it can be loaded (see
+ * NativeLibraryLoader), otherwise from the parity/ resources, recorded with the armeabi
+ * library shipped in echoprintLib.
+ *
+ */
+public class CodegenParityCheck
+{
+	public static void main(String args[]) throws IOException
+	{
+		Codegen nativeCodegen = Codegen.isNativeAvailable() ? new Codegen(Codegen.Engine.NATIVE) : null;
+		Codegen javaCodegen = new Codegen(Codegen.Engine.JAVA);
+		EchoprintCode expected = new EchoprintCode();
+		EchoprintCode actual = new EchoprintCode();
+		
+		System.out.println("native codes: " + (nativeCodegen != null ? "libechoprint-jni" : "recorded with the armeabi library"));
+		
+		String signals[] = {PcmFixtures.SILENCE, PcmFixtures.TONE, PcmFixtures.MUSIC};
+		int durations[] = {10, 20, 30};
+		int failures = 0;
+		
+		for(String signal : signals)
+		{
+			for(int seconds : durations)
+			{
+				short data[] = PcmFixtures.create(signal, seconds);
+				String nativeCode = nativeCodegen != null ? nativeCodegen.generate(data, data.length) : recordedCode(signal, seconds);
+				String javaCode = javaCodegen.generate(data, data.length);
+				
+				if(nativeCode.equals(javaCode))
+				{
+					System.out.println(signal + " " + seconds + "s: identical (" + nativeCode.length() + " chars)");
+					continue;
+				}
+				
+				failures++;
+				if(nativeCode.length() == 0 || javaCode.length() == 0)
+				{
+					System.out.println(signal + " " + seconds + "s: DIFFERENT, native " + nativeCode.length() + " chars, java " + javaCode.length() + " chars");
+					continue;
+				}
+				
+				expected.decode(nativeCode);
+				actual.decode(javaCode);
+				int same = 0;
+				int n = Math.min(expected.getCount(), actual.getCount());
+				for(int i = 0; i < n; i++)
+				{
+					if(expected.getTimes()[i] == actual.getTimes()[i] && expected.getHashes()[i] == actual.getHashes()[i])
+						same++;
+				}
+				System.out.println(signal + " " + seconds + "s: DIFFERENT, native " + expected.getCount() + " codes, java " + actual.getCount() + " codes, " + same + " equal in place");
+			}
+		}
+		
+		System.exit(failures == 0 ? 0 : 1);
+	}
+	
+	/**
+	 * @return the code recorded for a fixture, empty if the native library generated no code
+	 */
+	private static String recordedCode(String signal, int seconds) throws IOException
+	{
+		String resource = "/parity/" + signal + "-" + seconds + ".txt";
+		InputStream in = CodegenParityCheck.class.getResourceAsStream(resource);
+		if(in == null)
+			throw new IOException("missing " + resource);
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+		try
+		{
+			String line = reader.readLine();
+			return line == null ? "" : line.trim();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * DispatchBenchmark.java
+ * EchoprintBenchmark
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint.benchmark;
+
+import edu.gvsu.masl.echoprint.FingerprinterListener;
+import edu.gvsu.masl.echoprint.ListenerDispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Hashtable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks delivering the callbacks of a listening pass through a ListenerDispatcher.<br>
+ * "direct" calls the listener synchronously, "executor" goes through an executor that
+ * runs the events in place, which measures the event recycling.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark
+{
+	@Param({"direct", "executor"})
+	String delivery;
+	
+	@Param({"false", "true"})
+	boolean coalescing;
+	
+	ListenerDispatcher dispatcher;
+	Hashtable<String, String> match;
+	
+	@Setup
+	public void setup(final Blackhole blackhole)
+	{
+		Executor executor = null;
+		if("executor".equals(delivery))
+		{
+			executor = new Executor()
+			{
+				public void execute(Runnable command)
+				{
+					command.run();
+				}
+			};
+		}
+		
+		dispatcher = new ListenerDispatcher(new ConsumingListener(blackhole), executor);
+		dispatcher.setCoalescing(coalescing);
+		
+		match = new Hashtable<String, String>();
+		match.put("artist_name", "artist");
+		match.put("title", "title");
+	}
+	
+	@Benchmark
+	public void listeningPass()
+	{
+		dispatcher.willStartListeningPass();
+		dispatcher.didGenerateFingerprintCode("code");
+		dispatcher.didFindMatchForCode(match, "code");
+		dispatcher.didFinishListeningPass();
+	}
+	
+	private static class ConsumingListener implements FingerprinterListener
+	{
+		private final Blackhole blackhole;
+		
+		ConsumingListener(Blackhole blackhole)
+		{
+			this.blackhole = blackhole;
+		}
+		
+		public void didFinishListening()
+		{
+			blackhole.consume(1);
+		}
+		
+		public void didFinishListeningPass()
+		{
+			blackhole.consume(2);
+		}
+		
+		public void willStartListening()
+		{
+			blackhole.consume(3);
+		}
+		
+		public void willStartListeningPass()
+		{
+			blackhole.consume(4);
+		}
+		
+		public void didGenerateFingerprintCode(String code)
+		{
+			blackhole.consume(code);
+		}
+		
+		public void didFindMatchForCode(Hashtable<String, String> table, String code)
+		{
+			blackhole.consume(table);
+		}
+		
+		public void didNotFindMatchForCode(String code)
+		{
+			blackhole.consume(code);
+		}
+		
+		public void didFailWithException(Exception e)
+		{
+			blackhole.consume(e);
+		}
+	}
+}
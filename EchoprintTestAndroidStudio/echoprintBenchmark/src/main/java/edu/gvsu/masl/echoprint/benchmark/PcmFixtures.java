@@ -0,0 +1,141 @@
+/**
+ * PcmFixtures.java
+ * EchoprintBenchmark
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint.benchmark;
+
+import edu.gvsu.masl.echoprint.EchoprintCode;
+
+import java.util.Random;
+
+/**
+ * PCM fixtures<br>
+ * Deterministic mono 16 bit audio at 11025 Hz, the same format the fingerprinter records.<br>
+ * Every fixture is generated from a fixed seed so all the runs work on the same samples.
+ *
+ */
+public class PcmFixtures
+{
+	public final static int SAMPLE_RATE = 11025;
+	
+	public final static String SILENCE = "silence";
+	public final static String TONE = "tone";
+	public final static String MUSIC = "music";
+	
+	private final static long SEED = 0x5eed1e55L;
+	
+	/**
+	 * Creates a fixture
+	 * 
+	 * @param signal one of SILENCE, TONE or MUSIC
+	 * @param seconds the length of the fixture
+	 * @return the samples
+	 */
+	public static short[] create(String signal, int seconds)
+	{
+		short data[] = new short[SAMPLE_RATE * seconds];
+		
+		if(SILENCE.equals(signal))
+			return data;
+		else if(TONE.equals(signal))
+			tone(data);
+		else if(MUSIC.equals(signal))
+			music(data);
+		else
+			throw new IllegalArgumentException("unknown signal: " + signal);
+		
+		return data;
+	}
+	
+	private static void tone(short data[])
+	{
+		// 440 Hz plus 1 kHz, half scale
+		for(int i = 0; i < data.length; i++)
+		{
+			double t = (double) i / SAMPLE_RATE;
+			double v = 0.25 * StrictMath.sin(2 * Math.PI * 440 * t) + 0.25 * StrictMath.sin(2 * Math.PI * 1000 * t);
+			data[i] = (short) (v * Short.MAX_VALUE);
+		}
+	}
+	
+	private static void music(short data[])
+	{
+		// a chord with random notes on every beat, decaying envelope and some background noise
+		Random random = new Random(SEED);
+		int beat = SAMPLE_RATE / 2;
+		double frequencies[] = new double[3];
+		
+		for(int start = 0; start < data.length; start += beat)
+		{
+			int root = 45 + random.nextInt(24);
+			frequencies[0] = midiToFrequency(root);
+			frequencies[1] = midiToFrequency(root + 4 + random.nextInt(2) - 1);
+			frequencies[2] = midiToFrequency(root + 7);
+			
+			int end = Math.min(start + beat, data.length);
+			for(int i = start; i < end; i++)
+			{
+				double t = (double) (i - start) / SAMPLE_RATE;
+				double envelope = StrictMath.exp(-4 * t);
+				double v = 0;
+				for(double f : frequencies)
+					v += StrictMath.sin(2 * Math.PI * f * t) + 0.3 * StrictMath.sin(4 * Math.PI * f * t);
+				
+				v = 0.15 * envelope * v + 0.02 * random.nextGaussian();
+				data[i] = (short) (Math.max(Math.min(v, 1), -1) * Short.MAX_VALUE);
+			}
+		}
+	}
+	
+	private static double midiToFrequency(int note)
+	{
+		return 440 * StrictMath.pow(2, (note - 69) / 12.0);
+	}
+	
+	/**
+	 * Creates a code string with the typical density of the codegen output
+	 * 
+	 * @param seconds the length of the audio the code represents
+	 * @return the code string
+	 */
+	public static String createCode(int seconds)
+	{
+		// the codegen emits in the order of a hundred codes per second of music
+		Random random = new Random(SEED + seconds);
+		int count = 100 * seconds;
+		int maxTime = seconds * SAMPLE_RATE / 256;
+		
+		int times[] = new int[count];
+		int hashes[] = new int[count];
+		for(int i = 0; i < count; i++)
+		{
+			times[i] = random.nextInt(maxTime);
+			hashes[i] = random.nextInt(1 << 20);
+		}
+		
+		EchoprintCode code = new EchoprintCode();
+		code.set(times, hashes, count);
+		return code.encode();
+	}
+}
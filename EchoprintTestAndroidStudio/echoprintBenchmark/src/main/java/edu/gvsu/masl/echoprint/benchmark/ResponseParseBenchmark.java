@@ -0,0 +1,80 @@
+/**
+ * ResponseParseBenchmark.java
+ * EchoprintBenchmark
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint.benchmark;
+
+import edu.gvsu.masl.echoprint.QueryResponseParser;
+import edu.gvsu.masl.echoprint.QueryResult;
+
+import org.json.JSONException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing the server responses into query results.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseParseBenchmark
+{
+	final static String MATCH = "{\"response\":{\"songs\":[{\"artist_id\":\"\",\"artist_name\":\"P!nk\",\"id\":\"\",\"score\":54,\"title\":\"Don't Let Me Get Me\",\"message\":\"OK\"}],\"status\":{\"version\":\"1.0\",\"message\":\"Success\",\"code\":0}}}";
+	final static String NO_MATCH = "{\"response\":{\"songs\":[],\"status\":{\"version\":\"1.0\",\"message\":\"Success\",\"code\":0}}}";
+	
+	@Param({"match", "noMatch"})
+	String response;
+	
+	String json;
+	QueryResponseParser parser;
+	
+	@Setup
+	public void setup()
+	{
+		json = "match".equals(response) ? MATCH : NO_MATCH;
+		parser = new QueryResponseParser();
+	}
+	
+	@Benchmark
+	public QueryResult parse() throws JSONException
+	{
+		return parser.parse(json);
+	}
+}
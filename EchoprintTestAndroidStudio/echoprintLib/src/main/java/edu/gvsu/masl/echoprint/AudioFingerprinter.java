@@ -27,28 +27,16 @@
 package edu.gvsu.masl.echoprint;
 
 import android.app.Activity;
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
-import android.util.Log;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Hashtable;
+import java.util.concurrent.Executor;
 
 /**
  * Main fingerprinting class<br>
- * This class will record audio from the microphone, generate the fingerprint code using a native library and query the data server for a match
+ * This class will record audio from the microphone, generate the fingerprint code using a native library and query the data server for a match.<br>
+ * The work itself is done by a FingerprintPipeline running on its own thread.
  * 
  * @author Alex Restrepo (MASL)
  *
@@ -69,552 +57,206 @@ public class AudioFingerprinter implements Runnable
 	// Remember to request an API key from MooMash through the website and replace it in the url below.
 	private final String SERVER_URL = "http://api.mooma.sh/v1/song/identify?api_key=YOURMOOMASHAPIKEYHERE&code=";
 
-	private final int FREQUENCY = 11025;
-	private final int CHANNEL = AudioFormat.CHANNEL_IN_MONO;
-	private final int ENCODING = AudioFormat.ENCODING_PCM_16BIT;	
-	
 	private Thread thread;
-	private volatile boolean isRunning = false;
-	AudioRecord mRecordInstance = null;
-	
-	private short audioData[];
-	private int bufferSize;	
-	private int secondsToRecord;
-	private volatile boolean continuous;
-	
-	private AudioFingerprinterListener listener;
+	private volatile FingerprintPipeline pipeline;
+	private volatile File captureFile;
+	private volatile QueryTransport transport;
 	
+	private final ListenerDispatcher dispatcher;
+	private volatile FingerprinterMetrics metrics = FingerprinterMetrics.getDefault();
+
 	/**
-	 * Constructor for the class
+	 * Constructor for the class<br>
+	 * If the listener is an Activity the callbacks are delivered on its UI thread,
+	 * otherwise they are called on the fingerprinting thread.
 	 * 
 	 * @param listener is the AudioFingerprinterListener that will receive the callbacks
 	 */
 	public AudioFingerprinter(AudioFingerprinterListener listener)
 	{
-		this.listener = listener;
+		this(listener, listener instanceof Activity ? new UiThreadExecutor((Activity) listener) : null);
 	}
 	
 	/**
-	 * Starts the listening / fingerprinting process using the default parameters:<br>
-	 * A single listening pass of 20 seconds 
+	 * Constructor for the class
+	 * 
+	 * @param listener is the FingerprinterListener that will receive the callbacks
+	 * @param executor the executor used to deliver the callbacks, null to call the listener on the fingerprinting thread
 	 */
-	public void fingerprint()
+	public AudioFingerprinter(FingerprinterListener listener, Executor executor)
 	{
-		// set dafault listening time to 20 seconds
-		this.fingerprint(20);
+		this.dispatcher = new ListenerDispatcher(listener, executor);
+		this.dispatcher.setMetrics(metrics);
 	}
 	
 	/**
-	 * Starts a single listening / fingerprinting pass
+	 * Sets where the stage timings and counters of this fingerprinter are recorded<br>
+	 * By default every fingerprinter records into FingerprinterMetrics.getDefault()
 	 * 
-	 * @param seconds the seconds of audio to record.
+	 * @param metrics the metrics to record into
 	 */
-	public void fingerprint(int seconds)
+	public void setMetrics(FingerprinterMetrics metrics)
 	{
-		// no continuous listening
-		this.fingerprint(seconds, false);
+		if(metrics == null)
+			throw new IllegalArgumentException("metrics can't be null");
+		
+		this.metrics = metrics;
+		dispatcher.setMetrics(metrics);
 	}
 	
 	/**
-	 * Starts the listening / fingerprinting process
-	 * 
-	 * @param seconds the number of seconds to record per pass
-	 * @param continuous if true, the class will start a new fingerprinting pass after each pass
+	 * @return the metrics this fingerprinter records into
 	 */
-	public void fingerprint(int seconds, boolean continuous)
+	public FingerprinterMetrics getMetrics()
 	{
-		if(this.isRunning)
-			return;
-				
-		this.continuous = continuous;
-		
-		// cap to 30 seconds max, 10 seconds min.
-		this.secondsToRecord = Math.max(Math.min(seconds, 30), 10);
-		
-		// start the recording thread
-		thread = new Thread(this);
-		thread.start();
+		return metrics;
 	}
 	
 	/**
-	 * stops the listening / fingerprinting process if there's one in process
+	 * Enables or disables the coalescing of the high frequency callbacks<br>
+	 * When enabled, pass start / finish and generated code callbacks that pile up
+	 * in the executor are merged into a single callback carrying the latest value.<br>
+	 * The merged callback is delivered at the position of the first one, so it may
+	 * overtake match, no match and error callbacks posted in the meantime: a code of
+	 * the next pass can arrive before the match of the previous code. See ListenerDispatcher.
+	 * 
+	 * @param coalescing true to coalesce the high frequency callbacks
 	 */
-	public void stop() 
+	public void setCoalescingCallbacks(boolean coalescing)
 	{
-		this.continuous = false;
-		if(mRecordInstance != null)
-			mRecordInstance.stop();
+		dispatcher.setCoalescing(coalescing);
 	}
 	
 	/**
-	 * The main thread<br>
-	 * Records audio and generates the audio fingerprint, then it queries the server for a match and forwards the results to the listener.
+	 * Saves the audio recorded by the next fingerprinting processes<br>
+	 * The samples are written as raw, mono, 16 bit little endian PCM at 11025 Hz so
+	 * they can be replayed by the load test.
+	 * 
+	 * @param file the file to write, null to stop saving the audio
 	 */
-	public void run() 
+	public void setCaptureFile(File file)
 	{
-		this.isRunning = true;
-		try 
-		{			
-			// create the audio buffer
-			// get the minimum buffer size
-			int minBufferSize = AudioRecord.getMinBufferSize(FREQUENCY, CHANNEL, ENCODING);
-			
-			// and the actual buffer size for the audio to record
-			// frequency * seconds to record.
-			bufferSize = Math.max(minBufferSize, this.FREQUENCY * this.secondsToRecord);
-						
-			audioData = new short[bufferSize];
-						
-			// start recorder
-			mRecordInstance = new AudioRecord(
-								MediaRecorder.AudioSource.MIC,
-								FREQUENCY, CHANNEL, 
-								ENCODING, minBufferSize);
-						
-			willStartListening();
-			
-			mRecordInstance.startRecording();
-			boolean firstRun = true;
-			do 
-			{		
-				try
-				{
-					willStartListeningPass();
-					
-					long time = System.currentTimeMillis();
-					// fill audio buffer with mic data.
-					int samplesIn = 0;
-					do 
-					{					
-						samplesIn += mRecordInstance.read(audioData, samplesIn, bufferSize - samplesIn);
-						
-						if(mRecordInstance.getRecordingState() == AudioRecord.RECORDSTATE_STOPPED)
-							break;
-					} 
-					while (samplesIn < bufferSize);				
-					Log.d("Fingerprinter", "Audio recorded: " + (System.currentTimeMillis() - time) + " millis");
-										
-					// see if the process was stopped.
-					if(mRecordInstance.getRecordingState() == AudioRecord.RECORDSTATE_STOPPED || (!firstRun && !this.continuous))
-						break;
-					
-					// create an echoprint codegen wrapper and get the code
-					time = System.currentTimeMillis();
-					Codegen codegen = new Codegen();
-	    			String code = codegen.generate(audioData, samplesIn);
-	    			Log.d("Fingerprinter", "Codegen created in: " + (System.currentTimeMillis() - time) + " millis");
-	    			
-	    			if(code.length() == 0)
-	    			{
-	    				// no code?
-	    				// not enough audio data?
-						continue;
-	    			}
-	    			
-	    			didGenerateFingerprintCode(code);
-	    			
-	    			// fetch data from echonest
-	    			time = System.currentTimeMillis();
-	    			
-					String urlstr = SERVER_URL + code;			
-					HttpClient client = new DefaultHttpClient();
-	    			HttpGet get = new HttpGet(urlstr);
-	    			
-	    			// get response
-	    			HttpResponse response = client.execute(get);                
-	    			// Examine the response status
-	    	        Log.d("Fingerprinter",response.getStatusLine().toString());
-	
-	    	        // Get hold of the response entity
-	    	        HttpEntity entity = response.getEntity();
-	    	        // If the response does not enclose an entity, there is no need
-	    	        // to worry about connection release
-	
-	    	        String result = "";
-	    	        if (entity != null) 
-	    	        {
-	    	            // A Simple JSON Response Read
-	    	            InputStream instream = entity.getContent();
-	    	            result= convertStreamToString(instream);
-	    	            // now you have the string representation of the HTML request
-	    	            instream.close();
-	    	        }
-	     			Log.d("Fingerprinter", "Results fetched in: " + (System.currentTimeMillis() - time) + " millis");
-
-					// On successful recognition the MooMash API returns a JSON structure such as:
-					// {"response":{"songs":[{"artist_id":"","artist_name":"P!nk","id":"","score":54,"title":"Don't Let Me Get Me","message":"OK"}],"status":{"version":"1.0","message":"Success","code":0}}}
-					Log.v("AudioFingerprinter", "run - result: " + result);
-
-	    			// parse JSON
-		    		JSONObject jobj = new JSONObject(result);
-
-					if (jobj.has("response")) {
-						JSONObject responseObject = jobj.getJSONObject("response");
-
-						if (responseObject.has("songs")) {
-							JSONArray songsArray = responseObject.getJSONArray("songs");
-
-							if (songsArray.length() > 0) {
-								JSONObject songObject = songsArray.getJSONObject(0);
-
-								Hashtable<String, String> match = new Hashtable<String, String>();
-								match.put("artist_name", songObject.getString("artist_name"));
-								match.put("title", songObject.getString("title"));
-
-								didFindMatchForCode(match, code);
-							}
-							else {
-								didNotFindMatchForCode(code);
-							}
-						}
-					}
-					else {
-						didFailWithException(new Exception("result JSON parsing error"));
-					}
-
-					// Old parsing code for Echonest API.
-					/*
-		    		if(jobj.has("code"))
-		    			Log.d("Fingerprinter", "Response code:" + jobj.getInt("code") + " (" + this.messageForCode(jobj.getInt("code")) + ")");
-		    		
-		    		if(jobj.has("match"))
-		    		{
-		    			if(jobj.getBoolean("match"))
-		    			{
-		    				Hashtable<String, String> match = new Hashtable<String, String>();
-		    				match.put(SCORE_KEY, jobj.getDouble(SCORE_KEY) + "");
-		    				match.put(TRACK_ID_KEY, jobj.getString(TRACK_ID_KEY));
-		    				
-		    				// the metadata dictionary IS NOT included by default in the API demo server
-		    				// replace line 66/67 in API.py with:
-		    				// return json.dumps({"ok":True,"message":response.message(), "match":response.match(), "score":response.score, \
-	                        // "qtime":response.qtime, "track_id":response.TRID, "total_time":response.total_time, "metadata":response.metadata})
-		    				if(jobj.has("metadata"))
-		    				{
-		    					JSONObject metadata = jobj.getJSONObject("metadata");
-			    						    				
-			    				if(metadata.has(SCORE_KEY)) match.put(META_SCORE_KEY, metadata.getDouble(SCORE_KEY) + "");
-			    				if(metadata.has(TITLE_KEY)) match.put(TITLE_KEY, metadata.getString(TITLE_KEY));
-			    				if(metadata.has(ARTIST_KEY)) match.put(ARTIST_KEY, metadata.getString(ARTIST_KEY));
-			    				if(metadata.has(ALBUM_KEY)) match.put(ALBUM_KEY, metadata.getString(ALBUM_KEY));
-		    				}
-		    				
-		    				didFindMatchForCode(match, code);
-		    			}
-	    				else
-	    					didNotFindMatchForCode(code);	    			
-		    		}	    		
-		    		else
-		    		{
-		    			didFailWithException(new Exception("Unknown error"));
-		    		}
-					*/
-		    		
-		    		firstRun = false;
-				
-		    		didFinishListeningPass();
-				}
-				catch(Exception e)
-				{
-					e.printStackTrace();
-					Log.e("Fingerprinter", e.getLocalizedMessage());
-					
-					didFailWithException(e);
-				}
-			}
-			while (this.continuous);
-		} 
-		catch (Exception e) 
-		{
-			e.printStackTrace();
-			Log.e("Fingerprinter", e.getLocalizedMessage());
-			
-			didFailWithException(e);
-		}
-		
-		if(mRecordInstance != null)
-		{
-			mRecordInstance.stop();
-			mRecordInstance.release();
-			mRecordInstance = null;
-		}
-		this.isRunning = false;
-		
-		didFinishListening();
+		this.captureFile = file;
 	}
 	
-	private static String convertStreamToString(InputStream is) 
-	{
-	    /*
-	     * To convert the InputStream to String we use the BufferedReader.readLine()
-	     * method. We iterate until the BufferedReader return null which means
-	     * there's no more data to read. Each line will appended to a StringBuilder
-	     * and returned as String.
-	     */
-	    BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-	    StringBuilder sb = new StringBuilder();
-
-	    String line = null;
-	    try {
-	        while ((line = reader.readLine()) != null) {
-	            sb.append(line + "\n");
-	        }
-	    } catch (IOException e) {
-	        e.printStackTrace();
-	    } finally {
-	        try {
-	            is.close();
-	        } catch (IOException e) {
-	            e.printStackTrace();
-	        }
-	    }
-	    return sb.toString();
-	}
-		
-	private String messageForCode(int code)
+	/**
+	 * Sets how the codes are sent to the servers, e.g. an EndpointRouter over several servers<br>
+	 * By default the codes are sent to SERVER_URL with an HttpQueryTransport
+	 * 
+	 * @param transport the transport used by the next fingerprinting processes, null for the default
+	 */
+	public void setQueryTransport(QueryTransport transport)
 	{
-		try{
-			String codes[] = {
-					"NOT_ENOUGH_CODE", "CANNOT_DECODE", "SINGLE_BAD_MATCH", 
-					"SINGLE_GOOD_MATCH", "NO_RESULTS", "MULTIPLE_GOOD_MATCH_HISTOGRAM_INCREASED",
-					"MULTIPLE_GOOD_MATCH_HISTOGRAM_DECREASED", "MULTIPLE_BAD_HISTOGRAM_MATCH", "MULTIPLE_GOOD_MATCH"
-					}; 
-	
-			return codes[code];
-		}
-		catch(ArrayIndexOutOfBoundsException e)
-		{
-			return "UNKNOWN";
-		}
+		this.transport = transport;
 	}
 	
-	private void didFinishListening()
+	/**
+	 * Starts the listening / fingerprinting process using the default parameters:<br>
+	 * A single listening pass of 20 seconds 
+	 */
+	public void fingerprint()
 	{
-		Log.v("AudioFingerprinter", "didFinishListening");
-
-		if(listener == null)
-			return;
-		
-		if(listener instanceof Activity)
-		{
-			Activity activity = (Activity) listener;
-			activity.runOnUiThread(new Runnable() 
-			{		
-				public void run() 
-				{
-					listener.didFinishListening();
-				}
-			});
-		}
-		else
-			listener.didFinishListening();
+		// set dafault listening time to 20 seconds
+		this.fingerprint(20);
 	}
 	
-	private void didFinishListeningPass()
+	/**
+	 * Starts a single listening / fingerprinting pass
+	 * 
+	 * @param seconds the seconds of audio to record.
+	 */
+	public void fingerprint(int seconds)
 	{
-		Log.v("AudioFingerprinter", "didFinishListeningPass");
-
-		if(listener == null)
-			return;
-		
-		if(listener instanceof Activity)
-		{
-			Activity activity = (Activity) listener;
-			activity.runOnUiThread(new Runnable() 
-			{		
-				public void run() 
-				{
-					listener.didFinishListeningPass();
-				}
-			});
-		}
-		else
-			listener.didFinishListeningPass();
+		// no continuous listening
+		this.fingerprint(seconds, false);
 	}
 	
-	private void willStartListening()
+	/**
+	 * Starts the listening / fingerprinting process
+	 * 
+	 * @param seconds the number of seconds to record per pass
+	 * @param continuous if true, the class will start a new fingerprinting pass after each pass
+	 */
+	public synchronized void fingerprint(int seconds, boolean continuous)
 	{
-		Log.v("AudioFingerprinter", "willStartListening");
-
-		if(listener == null)
+		// the thread is alive as soon as start() returns, pipeline.isRunning() only once it runs
+		if(thread != null && thread.isAlive())
 			return;
 		
-		if(listener instanceof Activity)
+		AudioSource source = new MicrophoneAudioSource();
+		File file = this.captureFile;
+		if(file != null)
 		{
-			Activity activity = (Activity) listener;
-			activity.runOnUiThread(new Runnable() 
-			{		
-				public void run() 
-				{
-					listener.willStartListening();
-				}
-			});
-		}
-		else	
-			listener.willStartListening();
-	}
-	
-	private void willStartListeningPass()
-	{
-		Log.v("AudioFingerprinter", "willStartListeningPass");
-
-		if(listener == null)
-			return;
-			
-		if(listener instanceof Activity)
-		{
-			Activity activity = (Activity) listener;
-			activity.runOnUiThread(new Runnable() 
-			{		
-				public void run() 
-				{
-					listener.willStartListeningPass();
-				}
-			});
+			try
+			{
+				source = new RecordingAudioSource(source, new FileOutputStream(file));
+			}
+			catch(IOException e)
+			{
+				// fingerprint anyway, just without saving the audio
+				e.printStackTrace();
+			}
 		}
-		else
-			listener.willStartListeningPass();
+		
+		QueryTransport transport = this.transport;
+		if(transport == null)
+			transport = new HttpQueryTransport(SERVER_URL);
+		
+		FingerprintPipeline pipeline = new FingerprintPipeline(source, transport, dispatcher, seconds, continuous);
+		pipeline.setMetrics(metrics);
+		this.pipeline = pipeline;
+		
+		// start the recording thread, on this pipeline whatever this.pipeline is by then
+		thread = new Thread(pipeline);
+		thread.start();
 	}
 	
-	private void didGenerateFingerprintCode(final String code)
+	/**
+	 * stops the listening / fingerprinting process if there's one in process
+	 */
+	public void stop() 
 	{
-		Log.v("AudioFingerprinter", "didGenerateFingerprintCode - code: " + code);
-
-		if(listener == null)
-			return;
-		
-		if(listener instanceof Activity)
-		{
-			Activity activity = (Activity) listener;
-			activity.runOnUiThread(new Runnable() 
-			{		
-				public void run() 
-				{
-					listener.didGenerateFingerprintCode(code);
-				}
-			});
-		}
-		else
-			listener.didGenerateFingerprintCode(code);
+		FingerprintPipeline pipeline = this.pipeline;
+		if(pipeline != null)
+			pipeline.stop();
 	}
 	
-	private void didFindMatchForCode(final Hashtable<String, String> table, final String code)
+	/**
+	 * Runs the last fingerprinting pipeline on the calling thread: records audio and generates the audio fingerprint, then it queries the server for a match and forwards the results to the listener.<br>
+	 * fingerprint() doesn't go through this method, it runs its pipeline on its own thread.
+	 */
+	public void run() 
 	{
-		Log.v("AudioFingerprinter", "didFindMatchForCode - table: " + table);
-
-		if(listener == null)
-			return;
-			
-		if(listener instanceof Activity)
-		{
-			Activity activity = (Activity) listener;
-			activity.runOnUiThread(new Runnable() 
-			{		
-				public void run() 
-				{
-					listener.didFindMatchForCode(table, code);
-				}
-			});
-		}
-		else
-			listener.didFindMatchForCode(table, code);
+		FingerprintPipeline pipeline = this.pipeline;
+		if(pipeline != null)
+			pipeline.run();
 	}
 	
-	private void didNotFindMatchForCode(final String code)
+	/**
+	 * Executor that posts the callbacks to the UI thread of an Activity
+	 */
+	private static class UiThreadExecutor implements Executor
 	{
-		Log.v("AudioFingerprinter", "didNotFindMatchForCode");
-
-		if(listener == null)
-			return;
+		private final Activity activity;
 		
-		if(listener instanceof Activity)
+		UiThreadExecutor(Activity activity)
 		{
-			Activity activity = (Activity) listener;
-			activity.runOnUiThread(new Runnable() 
-			{		
-				public void run() 
-				{
-					listener.didNotFindMatchForCode(code);
-				}
-			});
+			this.activity = activity;
 		}
-		else
-			listener.didNotFindMatchForCode(code);
-	}
-	
-	private void didFailWithException(final Exception e)
-	{
-		Log.v("AudioFingerprinter", "didFailWithException - e: " + e.getLocalizedMessage());
-
-		if(listener == null)
-			return;
-			
-		if(listener instanceof Activity)
+		
+		public void execute(Runnable command)
 		{
-			Activity activity = (Activity) listener;
-			activity.runOnUiThread(new Runnable() 
-			{		
-				public void run() 
-				{
-					listener.didFailWithException(e);
-				}
-			});
+			activity.runOnUiThread(command);
 		}
-		else
-			listener.didFailWithException(e);
 	}
 		
 	/**
 	 * Interface for the fingerprinter listener<br>
-	 * Contains the different delegate methods for the fingerprinting process
+	 * Kept for compatibility, the delegate methods are declared in FingerprinterListener
 	 * @author Alex Restrepo
 	 *
 	 */
-	public interface AudioFingerprinterListener
-	{		
-		/**
-		 * Called when the fingerprinter process loop has finished
-		 */
-		public void didFinishListening();
-		
-		/**
-		 * Called when a single fingerprinter pass has finished
-		 */
-		public void didFinishListeningPass();
-		
-		/**
-		 * Called when the fingerprinter is about to start
-		 */
-		public void willStartListening();
-		
-		/**
-		 * Called when a single listening pass is about to start
-		 */
-		public void willStartListeningPass();
-		
-		/**
-		 * Called when the codegen libary generates a fingerprint code
-		 * @param code the generated fingerprint as a zcompressed, base64 string
-		 */
-		public void didGenerateFingerprintCode(String code);
-		
-		/**
-		 * Called if the server finds a match for the submitted fingerprint code 
-		 * @param table a hashtable with the metadata returned from the server
-		 * @param code the submited fingerprint code
-		 */
-		public void didFindMatchForCode(Hashtable<String, String> table, String code);
-		
-		/**
-		 * Called if the server DOES NOT find a match for the submitted fingerprint code
-		 * @param code the submited fingerprint code
-		 */
-		public void didNotFindMatchForCode(String code);
-		
-		/**
-		 * Called if there is an error / exception in the fingerprinting process
-		 * @param e an exception with the error
-		 */
-		public void didFailWithException(Exception e);
+	public interface AudioFingerprinterListener extends FingerprinterListener
+	{
 	}
 }
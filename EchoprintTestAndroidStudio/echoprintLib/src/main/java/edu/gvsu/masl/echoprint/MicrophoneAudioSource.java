@@ -0,0 +1,95 @@
+/**
+ * MicrophoneAudioSource.java
+ * EchoprintLib
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+/**
+ * Microphone audio source<br>
+ * Records the microphone through an AudioRecord.
+ *
+ */
+public class MicrophoneAudioSource implements AudioSource
+{
+	private final int FREQUENCY = 11025;
+	private final int CHANNEL = AudioFormat.CHANNEL_IN_MONO;
+	private final int ENCODING = AudioFormat.ENCODING_PCM_16BIT;	
+	
+	private AudioRecord mRecordInstance = null;
+	private volatile boolean stopped;
+	
+	public int getMinBufferSize()
+	{
+		return AudioRecord.getMinBufferSize(FREQUENCY, CHANNEL, ENCODING);
+	}
+	
+	public void start()
+	{
+		mRecordInstance = new AudioRecord(
+							MediaRecorder.AudioSource.MIC,
+							FREQUENCY, CHANNEL, 
+							ENCODING, getMinBufferSize());
+		
+		if(stopped)
+			return;
+		
+		mRecordInstance.startRecording();
+	}
+	
+	public int read(short buffer[], int offset, int length)
+	{
+		int read = mRecordInstance.read(buffer, offset, length);
+		
+		// AudioRecord reports errors as negative values
+		return read < 0 ? -1 : read;
+	}
+	
+	public boolean isStopped()
+	{
+		return stopped || mRecordInstance.getRecordingState() == AudioRecord.RECORDSTATE_STOPPED;
+	}
+	
+	public void stop()
+	{
+		stopped = true;
+		
+		AudioRecord record = mRecordInstance;
+		if(record != null)
+			record.stop();
+	}
+	
+	public void release()
+	{
+		if(mRecordInstance != null)
+		{
+			mRecordInstance.stop();
+			mRecordInstance.release();
+			mRecordInstance = null;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * LoadTest.java
+ * EchoprintLoadTest
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint.loadtest;
+
+import edu.gvsu.masl.echoprint.Codegen;
+import edu.gvsu.masl.echoprint.EndpointRouter;
+import edu.gvsu.masl.echoprint.FingerprintPipeline;
+import edu.gvsu.masl.echoprint.FingerprinterListener;
+import edu.gvsu.masl.echoprint.FingerprinterMetrics;
+import edu.gvsu.masl.echoprint.FingerprinterMetrics.Counter;
+import edu.gvsu.masl.echoprint.HttpQueryTransport;
+import edu.gvsu.masl.echoprint.LatencyHistogram;
+import edu.gvsu.masl.echoprint.ListenerDispatcher;
+import edu.gvsu.masl.echoprint.MetricsSnapshot;
+import edu.gvsu.masl.echoprint.QueryTransport;
+import edu.gvsu.masl.echoprint.ReplayAudioSource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test<br>
+ * Replays recorded captures through FingerprintPipelines, one thread per simulated stream,
+ * against local StubQueryServers (or real servers with --server) and reports the throughput
+ * and the time to match.<br>
+ * Usage: LoadTest [options] capture.pcm|capture.wav...<br>
+ * The captures are mono, 16 bit PCM at 11025 Hz, as written by AudioFingerprinter.setCaptureFile().
+ *
+ */
+public class LoadTest
+{
+	private final static String USAGE = 
+			"usage: LoadTest [options] capture.pcm|capture.wav...\n" +
+			"  --streams=N         simultaneous streams (10)\n" +
+			"  --duration=S        wall clock seconds to run (60)\n" +
+			"  --seconds=S         seconds of audio per pass, [10, 30] (10)\n" +
+			"  --speed=X           replay speed, 1 is real time, 0 as fast as possible (1)\n" +
+			"  --engine=E          codegen engine, NATIVE or JAVA (default engine)\n" +
+			"  --timeout=MS        connect and read timeout of the queries (5000)\n" +
+			"  --server=URL[,URL]  query real servers instead of the stub, the code is appended to the url\n" +
+			"  --endpoints=N       stub servers to start, more than one are queried through an EndpointRouter (1)\n" +
+			"  --no-hedging        don't send hedged queries when routing over several endpoints\n" +
+			"  --latency=MS        stub answer delay (100)\n" +
+			"  --jitter=MS         stub random extra delay (50)\n" +
+			"  --match-rate=F      stub fraction of matches (0.9)\n" +
+			"  --error-rate=F      stub fraction of HTTP 500 answers (0)\n" +
+			"  --timeout-rate=F    stub fraction of unanswered queries (0)\n" +
+			"  --slow-rate=F       stub fraction of answers delayed by --slow-latency (0)\n" +
+			"  --slow-latency=MS   stub extra delay of the slow answers (1000)\n" +
+			"  --seed=N            stub random seed (1)";
+	
+	public static void main(String args[]) throws Exception
+	{
+		int streams = 10;
+		int duration = 60;
+		int seconds = 10;
+		double speed = 1;
+		Codegen.Engine engine = null;
+		int timeout = 5000;
+		List<String> serverUrls = new ArrayList<String>();
+		int endpoints = 1;
+		boolean hedging = true;
+		int latency = 100;
+		int jitter = 50;
+		double matchRate = 0.9;
+		double errorRate = 0;
+		double timeoutRate = 0;
+		double slowRate = 0;
+		int slowLatency = 1000;
+		long seed = 1;
+		List<short[]> captures = new ArrayList<short[]>();
+		
+		for(String arg : args)
+		{
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if(arg.startsWith("--streams="))
+				streams = Integer.parseInt(value);
+			else if(arg.startsWith("--duration="))
+				duration = Integer.parseInt(value);
+			else if(arg.startsWith("--seconds="))
+				seconds = Integer.parseInt(value);
+			else if(arg.startsWith("--speed="))
+				speed = Double.parseDouble(value);
+			else if(arg.startsWith("--engine="))
+				engine = Codegen.Engine.valueOf(value.toUpperCase(Locale.US));
+			else if(arg.startsWith("--timeout="))
+				timeout = Integer.parseInt(value);
+			else if(arg.startsWith("--server="))
+				serverUrls.addAll(Arrays.asList(value.split(",")));
+			else if(arg.startsWith("--endpoints="))
+				endpoints = Integer.parseInt(value);
+			else if(arg.equals("--no-hedging"))
+				hedging = false;
+			else if(arg.startsWith("--latency="))
+				latency = Integer.parseInt(value);
+			else if(arg.startsWith("--jitter="))
+				jitter = Integer.parseInt(value);
+			else if(arg.startsWith("--match-rate="))
+				matchRate = Double.parseDouble(value);
+			else if(arg.startsWith("--error-rate="))
+				errorRate = Double.parseDouble(value);
+			else if(arg.startsWith("--timeout-rate="))
+				timeoutRate = Double.parseDouble(value);
+			else if(arg.startsWith("--slow-rate="))
+				slowRate = Double.parseDouble(value);
+			else if(arg.startsWith("--slow-latency="))
+				slowLatency = Integer.parseInt(value);
+			else if(arg.startsWith("--seed="))
+				seed = Long.parseLong(value);
+			else if(arg.startsWith("--"))
+			{
+				System.err.println("unknown option " + arg);
+				System.err.println(USAGE);
+				System.exit(2);
+			}
+			else
+				captures.add(ReplayAudioSource.readCapture(new FileInputStream(new File(arg))));
+		}
+		
+		if(captures.isEmpty())
+		{
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		
+		List<StubQueryServer> stubs = new ArrayList<StubQueryServer>();
+		if(serverUrls.isEmpty())
+		{
+			for(int i = 0; i < endpoints; i++)
+			{
+				StubQueryServer stub = new StubQueryServer(0, seed + i);
+				stub.setLatency(latency, jitter);
+				stub.setSlowAnswers(slowRate, slowLatency);
+				stub.setMatchRate(matchRate);
+				stub.setErrorRate(errorRate);
+				stub.setTimeoutRate(timeoutRate);
+				stub.start();
+				stubs.add(stub);
+				serverUrls.add(stub.getServerUrl());
+			}
+		}
+		
+		FingerprinterMetrics metrics = new FingerprinterMetrics();
+		
+		// a single router for all the streams, so they share what is known about the endpoints
+		EndpointRouter router = null;
+		if(serverUrls.size() > 1)
+		{
+			router = EndpointRouter.forUrls(serverUrls, timeout, timeout);
+			router.setHedging(hedging);
+			router.setMetrics(metrics);
+		}
+		
+		LatencyHistogram firstMatch = new LatencyHistogram();
+		LatencyHistogram passMatch = new LatencyHistogram();
+		AtomicInteger matchedStreams = new AtomicInteger();
+		
+		FingerprintPipeline pipelines[] = new FingerprintPipeline[streams];
+		Thread threads[] = new Thread[streams];
+		for(int i = 0; i < streams; i++)
+		{
+			// spread the streams over the captures and over the positions in each capture
+			short samples[] = captures.get(i % captures.size());
+			int offset = (int) ((long) samples.length * (i / captures.size()) * captures.size() / streams);
+			
+			QueryTransport transport = router;
+			if(transport == null)
+			{
+				HttpQueryTransport http = new HttpQueryTransport(serverUrls.get(0));
+				http.setTimeouts(timeout, timeout);
+				transport = http;
+			}
+			
+			ListenerDispatcher dispatcher = new ListenerDispatcher(new StreamListener(firstMatch, passMatch, matchedStreams), null);
+			dispatcher.setMetrics(metrics);
+			
+			pipelines[i] = new FingerprintPipeline(new ReplayAudioSource(samples, offset, speed, true), transport, dispatcher, seconds, true);
+			pipelines[i].setMetrics(metrics);
+			pipelines[i].setCodegenEngine(engine);
+			threads[i] = new Thread(pipelines[i], "stream-" + i);
+		}
+		
+		System.out.println("running " + streams + " streams for " + duration + " s against " + serverUrls);
+		long start = System.nanoTime();
+		for(Thread thread : threads)
+			thread.start();
+		
+		Thread.sleep(duration * 1000L);
+		
+		for(FingerprintPipeline pipeline : pipelines)
+			pipeline.stop();
+		for(Thread thread : threads)
+			thread.join();
+		
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		for(StubQueryServer stub : stubs)
+			stub.stop();
+		
+		MetricsSnapshot snapshot = metrics.snapshot();
+		long windows = snapshot.getCounter(Counter.WINDOWS);
+		System.out.println(String.format(Locale.US, "elapsed %.1f s, %d windows, %.2f windows/s, %.2f audio s per wall s", 
+				elapsed, windows, windows / elapsed, (double) windows * pipelines[0].getSecondsToRecord() / elapsed));
+		System.out.println("streams with a match: " + matchedStreams.get() + "/" + streams);
+		System.out.println("time to first match: " + firstMatch.snapshot());
+		System.out.println("time from pass start to match: " + passMatch.snapshot());
+		for(StubQueryServer stub : stubs)
+			System.out.println("stub " + stub.getServerUrl() + ": " + stub.getQueries() + " queries, " + stub.getMatches() + " matches, " + stub.getErrors() + " errors, " + stub.getTimeouts() + " timeouts");
+		if(router != null)
+		{
+			System.out.println(String.format(Locale.US, "router hedge delay %.2fms", router.getHedgeDelay()));
+			for(EndpointRouter.Endpoint endpoint : router.getEndpoints())
+				System.out.println("  " + endpoint);
+		}
+		System.out.println(snapshot);
+	}
+	
+	/**
+	 * Listener of a single stream, called on the stream thread
+	 */
+	private static class StreamListener implements FingerprinterListener
+	{
+		private final LatencyHistogram firstMatch;
+		private final LatencyHistogram passMatch;
+		private final AtomicInteger matchedStreams;
+		private long startedAt;
+		private long passStartedAt;
+		private boolean matched;
+		
+		StreamListener(LatencyHistogram firstMatch, LatencyHistogram passMatch, AtomicInteger matchedStreams)
+		{
+			this.firstMatch = firstMatch;
+			this.passMatch = passMatch;
+			this.matchedStreams = matchedStreams;
+		}
+		
+		public void willStartListening()
+		{
+			startedAt = System.nanoTime();
+		}
+		
+		public void willStartListeningPass()
+		{
+			passStartedAt = System.nanoTime();
+		}
+		
+		public void didFindMatchForCode(Hashtable<String, String> table, String code)
+		{
+			long now = System.nanoTime();
+			passMatch.record(now - passStartedAt);
+			if(!matched)
+			{
+				matched = true;
+				firstMatch.record(now - startedAt);
+				matchedStreams.incrementAndGet();
+			}
+		}
+		
+		public void didFinishListening()
+		{}
+		
+		public void didFinishListeningPass()
+		{}
+		
+		public void didGenerateFingerprintCode(String code)
+		{}
+		
+		public void didNotFindMatchForCode(String code)
+		{}
+		
+		public void didFailWithException(Exception e)
+		{}
+	}
+}
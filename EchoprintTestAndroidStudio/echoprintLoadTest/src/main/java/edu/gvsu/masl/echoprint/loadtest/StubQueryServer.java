@@ -0,0 +1,284 @@
+/**
+ * StubQueryServer.java
+ * EchoprintLoadTest
+ * 
+ * Copyright (C) 2012 Grand Valley State University (http://masl.cis.gvsu.edu/)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package edu.gvsu.masl.echoprint.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stub query server<br>
+ * Local HTTP server answering fingerprint queries like the MooMash API (http://www.mooma.sh/api.html).
+ * The latency, the match rate and the failures are configurable. The outcome of every query is drawn
+ * from a random seeded with the server seed and the code, so it doesn't depend on the order the
+ * handler threads take the queries in and a run can be repeated.<br>
+ * Responses are delayed on a scheduler instead of sleeping in the handler, so hundreds of
+ * pending queries don't need hundreds of server threads.
+ *
+ */
+public class StubQueryServer
+{
+	public final static String PATH = "/v1/song/identify";
+	
+	private final static String MATCH_RESPONSE = "{\"response\":{\"songs\":[{\"artist_id\":\"ARSTUB\",\"artist_name\":\"Stub Artist\",\"id\":\"SOSTUB\",\"score\":54,\"title\":\"Stub Song\",\"message\":\"OK\"}],\"status\":{\"version\":\"1.0\",\"message\":\"Success\",\"code\":0}}}";
+	private final static String NO_MATCH_RESPONSE = "{\"response\":{\"songs\":[],\"status\":{\"version\":\"1.0\",\"message\":\"Success\",\"code\":0}}}";
+	private final static String ERROR_RESPONSE = "Internal Server Error";
+	
+	// how long a query picked to time out is left unanswered
+	private final static long HANG_MILLIS = 10 * 60 * 1000;
+	
+	private final HttpServer server;
+	private final ExecutorService handlers;
+	private final ScheduledExecutorService scheduler;
+	private final long seed;
+	
+	private volatile int latency;
+	private volatile int jitter;
+	private volatile double slowRate;
+	private volatile int slowLatency;
+	private volatile double matchRate = 1;
+	private volatile double errorRate;
+	private volatile double timeoutRate;
+	
+	private final AtomicLong queries = new AtomicLong();
+	private final AtomicLong matches = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	
+	/**
+	 * @param port the port to listen on, 0 for any free port
+	 * @param seed the seed of the random outcomes, combined with the code of each query
+	 * @throws IOException if the server can't be bound
+	 */
+	public StubQueryServer(int port, long seed) throws IOException
+	{
+		this.seed = seed;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+		this.handlers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		this.scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+		
+		server.createContext(PATH, new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				answer(exchange);
+			}
+		});
+		server.setExecutor(handlers);
+	}
+	
+	/**
+	 * Sets the delay before each answer
+	 * 
+	 * @param latency the fixed part of the delay in milliseconds
+	 * @param jitter the random part of the delay in milliseconds, uniformly distributed in [0, jitter)
+	 */
+	public void setLatency(int latency, int jitter)
+	{
+		this.latency = latency;
+		this.jitter = jitter;
+	}
+	
+	/**
+	 * Delays some answers a lot more than the others, like a server stalling from time to time
+	 * 
+	 * @param slowRate the fraction of answers delayed
+	 * @param slowLatency the extra delay in milliseconds
+	 */
+	public void setSlowAnswers(double slowRate, int slowLatency)
+	{
+		this.slowRate = slowRate;
+		this.slowLatency = slowLatency;
+	}
+	
+	/**
+	 * @param matchRate the fraction of answered queries that find a match
+	 */
+	public void setMatchRate(double matchRate)
+	{
+		this.matchRate = matchRate;
+	}
+	
+	/**
+	 * @param errorRate the fraction of queries answered with an HTTP 500 and a non JSON body
+	 */
+	public void setErrorRate(double errorRate)
+	{
+		this.errorRate = errorRate;
+	}
+	
+	/**
+	 * @param timeoutRate the fraction of queries never answered, the client has to time out
+	 */
+	public void setTimeoutRate(double timeoutRate)
+	{
+		this.timeoutRate = timeoutRate;
+	}
+	
+	public void start()
+	{
+		server.start();
+	}
+	
+	public void stop()
+	{
+		server.stop(0);
+		scheduler.shutdownNow();
+		handlers.shutdownNow();
+	}
+	
+	/**
+	 * @return the url the codes are appended to, for HttpQueryTransport
+	 */
+	public String getServerUrl()
+	{
+		return "http://127.0.0.1:" + server.getAddress().getPort() + PATH + "?api_key=STUB&code=";
+	}
+	
+	public long getQueries()
+	{
+		return queries.get();
+	}
+	
+	public long getMatches()
+	{
+		return matches.get();
+	}
+	
+	public long getErrors()
+	{
+		return errors.get();
+	}
+	
+	public long getTimeouts()
+	{
+		return timeouts.get();
+	}
+	
+	private void answer(final HttpExchange exchange)
+	{
+		queries.incrementAndGet();
+		
+		Random random = new Random(mix(seed ^ codeOf(exchange).hashCode()));
+		double outcome = random.nextDouble();
+		long delay = latency + (jitter > 0 ? random.nextInt(jitter) : 0);
+		if(random.nextDouble() < slowRate)
+			delay += slowLatency;
+		
+		if(outcome < timeoutRate)
+		{
+			timeouts.incrementAndGet();
+			scheduler.schedule(new Runnable()
+			{
+				public void run()
+				{
+					exchange.close();
+				}
+			}, HANG_MILLIS, TimeUnit.MILLISECONDS);
+			return;
+		}
+		
+		final int status;
+		final String body;
+		if(outcome < timeoutRate + errorRate)
+		{
+			errors.incrementAndGet();
+			status = 500;
+			body = ERROR_RESPONSE;
+		}
+		else if(random.nextDouble() < matchRate)
+		{
+			matches.incrementAndGet();
+			status = 200;
+			body = MATCH_RESPONSE;
+		}
+		else
+		{
+			status = 200;
+			body = NO_MATCH_RESPONSE;
+		}
+		
+		scheduler.schedule(new Runnable()
+		{
+			public void run()
+			{
+				send(exchange, status, body);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Spreads the bits of a seed, the first values of two Randoms seeded with close values are close too
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	
+	private static String codeOf(HttpExchange exchange)
+	{
+		String query = exchange.getRequestURI().getRawQuery();
+		if(query == null)
+			return "";
+		
+		for(String parameter : query.split("&"))
+		{
+			if(parameter.startsWith("code="))
+				return parameter.substring("code=".length());
+		}
+		return "";
+	}
+	
+	private static void send(HttpExchange exchange, int status, String body)
+	{
+		try
+		{
+			byte bytes[] = body.getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", status == 200 ? "application/json" : "text/plain");
+			exchange.sendResponseHeaders(status, bytes.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(bytes);
+			out.close();
+		}
+		catch(IOException e)
+		{
+			// the client gave up
+			exchange.close();
+		}
+	}
+}
@@ -24,8 +24,11 @@
  * SOFTWARE.
  */
  
+#ifdef __ANDROID__
 #include <android/log.h>
+#endif
 #include <string.h>
+#include <string>
 #include <jni.h>
 #include "edu_gvsu_masl_echoprint_Codegen.h"
 #include "echoprint-codegen-master/src/Codegen.h"
@@ -38,11 +41,13 @@ JNIEXPORT jstring JNICALL Java_edu_gvsu_masl_echoprint_Codegen_codegen
 	
     // invoke the codegen
 	Codegen c = Codegen(data, (unsigned int)numSamples, 0);	
-	const char *code = c.getCodeString().c_str();
+	
+	// keep the string alive while its characters are used, getCodeString() returns a copy
+	std::string code = c.getCodeString();
 	
     // release the native array as we're done with them
-	env->ReleaseFloatArrayElements(pcmData, data, 0); 
+	env->ReleaseFloatArrayElements(pcmData, data, JNI_ABORT); 
     
     // return the fingerprint string
-	return env->NewStringUTF(code);
+	return env->NewStringUTF(code.c_str());
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+# Host build of libechoprint-jni, for running the codegen on a desktop JVM.
+#
+# Build instructions for Linux x86_64:
+# - Download the echoprint-codegen and Boost sources into the jni folder as described in Android.mk.
+# - Install a JDK (for the JNI headers), g++ and the zlib development package.
+# - Go to the jni folder and run: make -f Host.mk
+# - The generated library will be placed in libs/linux-x86_64/libechoprint-jni.so.
+#
+# The same sources as Android.mk are compiled, so the host library generates the same codes.
+# Set JAVA_HOME if javac is not on the PATH, and BOOST_DIR / CODEGEN_DIR to use other locations.
+
+PLATFORM    ?= linux-x86_64
+JAVA_HOME   ?= $(shell dirname $$(dirname $$(readlink -f $$(which javac))))
+BOOST_DIR   ?= ./boost_1_58_0
+CODEGEN_DIR ?= ./echoprint-codegen-master/src
+
+OUT_DIR     := libs/$(PLATFORM)
+OBJ_DIR     := obj/$(PLATFORM)
+TARGET      := $(OUT_DIR)/libechoprint-jni.so
+
+SRC_FILES   := AndroidCodegen.cpp \
+               $(CODEGEN_DIR)/Codegen.cpp \
+               $(CODEGEN_DIR)/Whitening.cpp \
+               $(CODEGEN_DIR)/SubbandAnalysis.cpp \
+               $(CODEGEN_DIR)/MatrixUtility.cpp \
+               $(CODEGEN_DIR)/Fingerprint.cpp \
+               $(CODEGEN_DIR)/Base64.cpp \
+               $(CODEGEN_DIR)/AudioStreamInput.cpp \
+               $(CODEGEN_DIR)/AudioBufferInput.cpp
+
+OBJ_FILES   := $(addprefix $(OBJ_DIR)/,$(notdir $(SRC_FILES:.cpp=.o)))
+
+CXX         ?= g++
+CXXFLAGS    += -O3 -fPIC -fexceptions -DNDEBUG \
+               -I. -I$(CODEGEN_DIR) -I$(BOOST_DIR) \
+               -I$(JAVA_HOME)/include -I$(JAVA_HOME)/include/linux
+LDFLAGS     += -shared -Wl,--no-undefined
+LDLIBS      += -lz
+
+vpath %.cpp . $(CODEGEN_DIR)
+
+all: $(TARGET)
+
+$(TARGET): $(OBJ_FILES)
+	@mkdir -p $(OUT_DIR)
+	$(CXX) $(LDFLAGS) -o $@ $^ $(LDLIBS)
+
+$(OBJ_DIR)/%.o: %.cpp
+	@mkdir -p $(OBJ_DIR)
+	$(CXX) $(CXXFLAGS) -c -o $@ $<
+
+clean:
+	rm -rf $(OBJ_DIR) $(TARGET)
+
+.PHONY: all clean